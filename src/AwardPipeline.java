@@ -0,0 +1,374 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves badge and leaderboard work for finished quizzes off the caller's thread.
+ *
+ * {@link #submit(User, int)} adds the quiz points to the user straight away (a
+ * single atomic add) and queues the user for settling. A background thread takes
+ * queued users in batches, waiting briefly after the first one so a burst of
+ * finishing quizzes lands in one batch, and settles each batch with one call to
+ * {@link GamificationEngine#settle(java.util.Collection)}. After every batch it
+ * tells its listeners the version of the leaderboard snapshot the engine published.
+ *
+ * Awards to a user who is already queued are coalesced: their points are added,
+ * and the single queued settle picks them all up. The queue is bounded; when it is
+ * full, submit still never blocks: the user is set aside as overflowed, at most once
+ * per user, and joins the next batch.
+ *
+ * Queue depth, lag, throughput and failures are available from {@link #getMetrics()}.
+ * A batch the engine fails to settle, or a listener that throws, is counted there,
+ * kept as {@link #getLastFailure()} and reported to the listeners; the pipeline
+ * carries on with the next batch.
+ */
+public class AwardPipeline implements AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 10_000;
+    public static final long DEFAULT_LINGER_MILLIS = 5;
+    private static final int MAX_BATCH = 4_096;
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    /**
+     * Told about every leaderboard version the pipeline publishes. Called on the
+     * pipeline thread; listeners that update Swing components must hand over to the EDT.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void published(long version, int usersSettled);
+
+        /**
+         * Called when the engine failed to settle a batch. The users' points were
+         * added already; their badges and places follow with the next batch that
+         * settles them.
+         */
+        default void settleFailed(RuntimeException failure, int usersInBatch) {
+        }
+    }
+
+    /**
+     * Counters describing the pipeline at one moment.
+     */
+    public static final class Metrics {
+        private final int queueDepth;
+        private final long submitted;
+        private final long coalesced;
+        private final long overflowed;
+        private final long settled;
+        private final long batches;
+        private final long version;
+        private final long currentLagNanos;
+        private final long maxLagNanos;
+        private final long failedBatches;
+        private final long listenerFailures;
+
+        Metrics(int queueDepth, long submitted, long coalesced, long overflowed, long settled, long batches,
+                long version, long currentLagNanos, long maxLagNanos, long failedBatches, long listenerFailures) {
+            this.queueDepth = queueDepth;
+            this.submitted = submitted;
+            this.coalesced = coalesced;
+            this.overflowed = overflowed;
+            this.settled = settled;
+            this.batches = batches;
+            this.version = version;
+            this.currentLagNanos = currentLagNanos;
+            this.maxLagNanos = maxLagNanos;
+            this.failedBatches = failedBatches;
+            this.listenerFailures = listenerFailures;
+        }
+
+        /**
+         * Users waiting to be settled.
+         */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        /**
+         * Awards folded into a settle that was already queued for the same user.
+         */
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        /**
+         * Awards that found the queue full and were set aside for the next batch.
+         */
+        public long getOverflowed() {
+            return overflowed;
+        }
+
+        /**
+         * Users settled from the queue.
+         */
+        public long getSettled() {
+            return settled;
+        }
+
+        public long getBatches() {
+            return batches;
+        }
+
+        /**
+         * The last published leaderboard version.
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * How long the oldest queued award has been waiting, 0 if none is.
+         */
+        public long getCurrentLagNanos() {
+            return currentLagNanos;
+        }
+
+        /**
+         * The longest any award waited between submit and settle.
+         */
+        public long getMaxLagNanos() {
+            return maxLagNanos;
+        }
+
+        /**
+         * Batches the engine failed to settle.
+         */
+        public long getFailedBatches() {
+            return failedBatches;
+        }
+
+        /**
+         * Calls to a listener that threw.
+         */
+        public long getListenerFailures() {
+            return listenerFailures;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("depth=%d submitted=%d coalesced=%d overflowed=%d settled=%d batches=%d "
+                            + "version=%d lag=%.1fms maxLag=%.1fms failedBatches=%d listenerFailures=%d",
+                    queueDepth, submitted, coalesced, overflowed, settled, batches, version,
+                    currentLagNanos / 1e6, maxLagNanos / 1e6, failedBatches, listenerFailures);
+        }
+    }
+
+    private final GamificationEngine engine;
+    private final long lingerMillis;
+    private final BlockingQueue<User> queue;
+    private final Map<User, Long> queuedAt = new ConcurrentHashMap<>(); // users in the queue, with the time of their first award
+    private final Set<User> overflow = ConcurrentHashMap.newKeySet();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Thread worker;
+    private volatile boolean running = true;
+    private final AtomicInteger submitting = new AtomicInteger(); // submits past the running check, see run()
+    private volatile boolean busy;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong overflowed = new AtomicLong();
+    private volatile long settled;
+    private volatile long batches;
+    private volatile long version;
+    private volatile long maxLagNanos;
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong listenerFailures = new AtomicLong();
+    private volatile RuntimeException lastFailure;
+
+    public AwardPipeline(GamificationEngine engine) {
+        this(engine, DEFAULT_CAPACITY, DEFAULT_LINGER_MILLIS);
+    }
+
+    /**
+     * Starts the pipeline thread.
+     *
+     * @param capacity     maximum number of users waiting to be settled
+     * @param lingerMillis how long to wait after the first queued user for more to arrive
+     */
+    public AwardPipeline(GamificationEngine engine, int capacity, long lingerMillis) {
+        if (capacity <= 0 || lingerMillis < 0) {
+            throw new IllegalArgumentException("Capacity must be positive and linger must not be negative");
+        }
+        this.engine = engine;
+        this.lingerMillis = lingerMillis;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        worker = new Thread(this::run, "award-pipeline");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Awards the points for a finished quiz. The points are added to the user at
+     * once; the badge and leaderboard place follow with the next published version.
+     * Never blocks.
+     *
+     * @throws IllegalStateException if the pipeline was closed
+     */
+    public void submit(User user, int correctAnswers) {
+        // Counted before the check, so the pipeline thread cannot stop between the two
+        submitting.incrementAndGet();
+        try {
+            if (!running) {
+                throw new IllegalStateException("Award pipeline is closed");
+            }
+            submitted.incrementAndGet();
+            engine.addQuizPoints(user, correctAnswers);
+            if (queuedAt.putIfAbsent(user, System.nanoTime()) != null) {
+                coalesced.incrementAndGet(); // The queued settle will see these points too
+                return;
+            }
+            if (!queue.offer(user)) {
+                overflowed.incrementAndGet();
+                overflow.add(user); // Stays in queuedAt, so later awards still coalesce
+            }
+        } finally {
+            submitting.decrementAndGet();
+        }
+    }
+
+    public Metrics getMetrics() {
+        long oldest = Long.MAX_VALUE;
+        for (long at : queuedAt.values()) {
+            oldest = Math.min(oldest, at);
+        }
+        long lag = oldest == Long.MAX_VALUE ? 0 : System.nanoTime() - oldest;
+        return new Metrics(queue.size(), submitted.get(), coalesced.get(), overflowed.get(), settled, batches,
+                version, lag, maxLagNanos, failedBatches.get(), listenerFailures.get());
+    }
+
+    /**
+     * The last exception thrown while settling a batch or by a listener, or null if there was none.
+     */
+    public RuntimeException getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * The version of the engine's leaderboard snapshot after the last batch.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Waits until every award submitted before this call has been settled.
+     *
+     * @return false if that did not happen within the timeout
+     */
+    public boolean flush(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (this) {
+            while (busy || !queuedAt.isEmpty()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0 || !worker.isAlive()) return false;
+                wait(Math.min(remaining, IDLE_POLL_MILLIS));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Settles everything still queued and stops the pipeline thread. Submits made
+     * after this are refused. If the calling thread is interrupted while waiting,
+     * it stops waiting and keeps its interrupt status; the pipeline thread still
+     * settles what was queued.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<User> batch = new ArrayList<>();
+        while (true) {
+            try {
+                User first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    busy = true;
+                    batch.add(first);
+                    if (lingerMillis > 0 && queue.size() < MAX_BATCH) {
+                        Thread.sleep(lingerMillis); // Let the rest of a burst arrive
+                    }
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+            if (!overflow.isEmpty()) {
+                busy = true;
+                for (User user : overflow) {
+                    overflow.remove(user);
+                    batch.add(user);
+                }
+            }
+            if (!batch.isEmpty()) {
+                apply(batch);
+                batch.clear();
+            }
+            synchronized (this) {
+                busy = false;
+                notifyAll();
+            }
+            // A submit that passed its running check before close is waited for, and its user settled
+            if (!running && submitting.get() == 0 && queuedAt.isEmpty()) return;
+        }
+    }
+
+    private void apply(List<User> batch) {
+        long now = System.nanoTime();
+        for (User user : batch) {
+            // Unmark before settling: a later award queues the user again instead of being lost
+            Long at = queuedAt.remove(user);
+            if (at != null && now - at > maxLagNanos) {
+                maxLagNanos = now - at;
+            }
+        }
+        RuntimeException failure = null;
+        try {
+            engine.settle(batch);
+        } catch (RuntimeException e) {
+            failure = e;
+            failedBatches.incrementAndGet();
+            lastFailure = e;
+        }
+        settled += batch.size();
+        batches++;
+        long published = engine.getLeaderboardSnapshot().getVersion();
+        version = published;
+        for (Listener listener : listeners) {
+            try {
+                if (failure != null) {
+                    listener.settleFailed(failure, batch.size());
+                }
+                listener.published(published, batch.size());
+            } catch (RuntimeException e) {
+                listenerFailures.incrementAndGet();
+                lastFailure = e;
+            }
+        }
+    }
+}
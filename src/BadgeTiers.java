@@ -0,0 +1,149 @@
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * An immutable set of badge tiers, each earned from a minimum number of points.
+ *
+ * The tiers are kept in a TreeMap keyed by their point requirement, so the badge
+ * for a points total is a single floor lookup, O(log n) for any number of tiers,
+ * and does not depend on the order the tiers were listed in.
+ *
+ * Tier sets are read from a JSON file with the same badge objects GamificationStore
+ * writes:
+ * {@code {"tiers": [{"name": "Gold", "iconPath": "...", "requirementPoints": 15, "requirement": "..."}, ...]}}.
+ * A bare array of badges is accepted too. Two tiers may not share a name or a
+ * point requirement. Icon paths are written with '/' and are relative to the
+ * working directory, like the built-in ones; both are turned into the platform's
+ * own form through {@link File}.
+ */
+public class BadgeTiers {
+    /**
+     * Where GamificationEngine looks for its tiers.
+     */
+    public static final String DEFAULT_FILE = "assets" + File.separator + "badges" + File.separator + "tiers.json";
+
+    private final NavigableMap<Integer, Badge> byPoints = new TreeMap<>();
+    private final Map<String, Badge> byName = new HashMap<>();
+    private final List<Badge> badges; // highest requirement first
+
+    /**
+     * Creates a tier set from the given badges, in any order.
+     *
+     * @throws IllegalArgumentException if two badges share a name or a point requirement
+     */
+    public BadgeTiers(Collection<Badge> tiers) {
+        for (Badge badge : tiers) {
+            if (byPoints.put(badge.getRequirementPoints(), badge) != null) {
+                throw new IllegalArgumentException("Two badge tiers require " + badge.getRequirementPoints() + " points");
+            }
+            if (byName.put(badge.getBadgeName(), badge) != null) {
+                throw new IllegalArgumentException("Two badge tiers are named " + badge.getBadgeName());
+            }
+        }
+        badges = Collections.unmodifiableList(new ArrayList<>(byPoints.descendingMap().values()));
+    }
+
+    /**
+     * The four tiers the engine has always had: Gold, Silver, Bronze and Keep Learning.
+     */
+    public static BadgeTiers defaults() {
+        return new BadgeTiers(Arrays.asList(
+                new Badge("Gold", iconPath("assets/badges/Gold.png"), 15, "Score 15+ points"),
+                new Badge("Silver", iconPath("assets/badges/Silver.png"), 10, "Score 10–14 points"),
+                new Badge("Bronze", iconPath("assets/badges/Bronze.png"), 5, "Score 5–9 points"),
+                new Badge("Keep Learning", iconPath("assets/badges/Keep_Learning.png"), 0, "Less than 5 points")));
+    }
+
+    /**
+     * Returns an icon path written with '/' in the platform's own form, or an empty
+     * path as it is.
+     */
+    static String iconPath(String path) {
+        return path.isEmpty() ? path : new File(path).getPath();
+    }
+
+    /**
+     * Reads a tier set from a JSON file.
+     */
+    public static BadgeTiers load(File file) throws DataAccessException {
+        List<Badge> tiers = new ArrayList<>();
+        BadgeTypeAdapter adapter = new BadgeTypeAdapter();
+        try (JsonReader in = new JsonReader(new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8)))) {
+            if (in.peek() == JsonToken.BEGIN_OBJECT) {
+                in.beginObject();
+                while (in.hasNext()) {
+                    if (in.nextName().equals("tiers")) {
+                        readTiers(in, adapter, tiers);
+                    } else {
+                        in.skipValue();
+                    }
+                }
+                in.endObject();
+            } else {
+                readTiers(in, adapter, tiers);
+            }
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            throw new DataAccessException("Could not read badge tiers from " + file, e);
+        }
+        if (tiers.isEmpty()) {
+            throw new DataAccessException("No badge tiers in " + file);
+        }
+        try {
+            return new BadgeTiers(tiers);
+        } catch (IllegalArgumentException e) {
+            throw new DataAccessException("Invalid badge tiers in " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void readTiers(JsonReader in, BadgeTypeAdapter adapter, List<Badge> tiers) throws IOException {
+        in.beginArray();
+        while (in.hasNext()) {
+            Badge badge = adapter.read(in);
+            if (badge != null) {
+                tiers.add(new Badge(badge.getBadgeName(), iconPath(badge.getBadgeIconPath()),
+                        badge.getRequirementPoints(), badge.getRequirement()));
+            }
+        }
+        in.endArray();
+    }
+
+    /**
+     * Returns the highest badge the given points earn, or null if they are below
+     * every tier.
+     */
+    public Badge badgeFor(int points) {
+        Map.Entry<Integer, Badge> tier = byPoints.floorEntry(points);
+        return tier == null ? null : tier.getValue();
+    }
+
+    /**
+     * Returns the points needed for the next badge up, or -1 at the top tier.
+     */
+    public int nextThreshold(int points) {
+        Integer next = byPoints.higherKey(points);
+        return next == null ? -1 : next;
+    }
+
+    /**
+     * Returns the badge with the given name, or null if there is none.
+     */
+    public Badge findBadge(String badgeName) {
+        return byName.get(badgeName);
+    }
+
+    /**
+     * Returns the badges, highest requirement first.
+     */
+    public List<Badge> getBadges() {
+        return badges;
+    }
+
+    public int size() {
+        return badges.size();
+    }
+}
@@ -0,0 +1,64 @@
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Reads and writes a {@link Badge} as a JSON object without reflection:
+ * {@code {"name": "Gold", "iconPath": "...", "requirementPoints": 15, "requirement": "..."}}.
+ * Unknown fields are skipped, so newer files can still be read.
+ */
+public class BadgeTypeAdapter extends TypeAdapter<Badge> {
+
+    @Override
+    public void write(JsonWriter out, Badge badge) throws IOException {
+        if (badge == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("name").value(badge.getBadgeName());
+        out.name("iconPath").value(badge.getBadgeIconPath());
+        out.name("requirementPoints").value(badge.getRequirementPoints());
+        out.name("requirement").value(badge.getRequirement());
+        out.endObject();
+    }
+
+    @Override
+    public Badge read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String name = null;
+        String iconPath = "";
+        int requirementPoints = 0;
+        String requirement = "";
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "name":
+                    name = in.nextString();
+                    break;
+                case "iconPath":
+                    iconPath = in.nextString();
+                    break;
+                case "requirementPoints":
+                    requirementPoints = in.nextInt();
+                    break;
+                case "requirement":
+                    requirement = in.nextString();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        if (name == null) {
+            throw new IOException("Badge without a name at " + in.getPath());
+        }
+        return new Badge(name, iconPath, requirementPoints, requirement);
+    }
+}
@@ -0,0 +1,481 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * Binary, append-only implementation of DatabaseHandler.
+ *
+ * Every score is stored as a fixed-width 16 byte record (score, timestamp in
+ * epoch milliseconds, user id) after a small file header. Appends write one record
+ * through a FileChannel that stays open, and reads go through read-only
+ * MappedByteBuffers, so scanning the history does not allocate a String per record
+ * the way the text format used by DataManager does. A single mapping cannot cover
+ * more than 2GB, so the records are mapped in chunks of {@link #CHUNK_RECORDS}
+ * records and addressed with long record numbers; the log can grow past 2GB.
+ *
+ * Existing text score files can be converted once with {@link #migrateFromText}.
+ */
+public class BinaryScoreLog implements DatabaseHandler, Closeable {
+    private static final int MAGIC = 0x4D485153; // "MHQS"
+    private static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_SIZE = 16;
+    // 2^26 records of 16 bytes make 1GB chunks; no record ever spans two of them
+    static final int CHUNK_SHIFT = 26;
+    static final long CHUNK_RECORDS = 1L << CHUNK_SHIFT;
+
+    private final File file;
+    private FileChannel channel; // replaced by deleteData
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(RECORD_SIZE);
+    private MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+    private long mappedCount;
+    private long recordCount;
+    // Built by the first window query, then kept up to date by appends
+    private TimeBucketIndex timeBuckets;
+    private final TreeMap<Long, long[]> bucketRecords = new TreeMap<>(); // hour -> first and last record in it
+
+    /**
+     * Opens the binary score log, creating it with an empty header if it does not exist.
+     */
+    public BinaryScoreLog(String fileName) throws DataAccessException {
+        this.file = new File(fileName);
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new DataAccessException("Could not open binary score log", e);
+        }
+        try {
+            initializeHeader();
+        } catch (IOException e) {
+            closeQuietly();
+            throw new DataAccessException("Could not read binary score log header", e);
+        } catch (DataAccessException e) {
+            closeQuietly();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the header for a new file, or validates the header of an existing one.
+     * A partially written record at the end (e.g. after a crash) is cut off.
+     */
+    private void initializeHeader() throws IOException, DataAccessException {
+        long size = channel.size();
+        if (size == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            writeFully(header, 0);
+            recordCount = 0;
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+            // keep reading until the header is complete or the file ends
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+            throw new DataAccessException("Not a binary score log: " + file.getName());
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new DataAccessException("Unsupported binary score log version " + version);
+        }
+        recordCount = (size - HEADER_SIZE) / RECORD_SIZE;
+        long validSize = HEADER_SIZE + recordCount * RECORD_SIZE;
+        if (validSize != size) {
+            channel.truncate(validSize);
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Returns read-only mappings that together cover every record written so far,
+     * {@link #CHUNK_RECORDS} records each. Only the chunks that records were appended
+     * to since the last call are mapped again; full chunks stay mapped as they are.
+     */
+    private ByteBuffer[] records() throws DataAccessException {
+        if (mappedCount != recordCount) {
+            int count = (int) ((recordCount + CHUNK_RECORDS - 1) >>> CHUNK_SHIFT);
+            MappedByteBuffer[] remapped = Arrays.copyOf(chunks, count);
+            try {
+                for (int c = (int) (mappedCount >>> CHUNK_SHIFT); c < count; c++) {
+                    long first = (long) c << CHUNK_SHIFT;
+                    long records = Math.min(CHUNK_RECORDS, recordCount - first);
+                    remapped[c] = channel.map(FileChannel.MapMode.READ_ONLY,
+                            HEADER_SIZE + first * RECORD_SIZE, records * RECORD_SIZE);
+                }
+            } catch (IOException e) {
+                throw new DataAccessException("Unable to map binary score log.", e);
+            }
+            chunks = remapped;
+            mappedCount = recordCount;
+        }
+        return chunks;
+    }
+
+    private static int score(ByteBuffer[] chunks, long record) {
+        return chunks[(int) (record >>> CHUNK_SHIFT)].getInt(offset(record));
+    }
+
+    private static long timestamp(ByteBuffer[] chunks, long record) {
+        return chunks[(int) (record >>> CHUNK_SHIFT)].getLong(offset(record) + 4);
+    }
+
+    private static int userId(ByteBuffer[] chunks, long record) {
+        return chunks[(int) (record >>> CHUNK_SHIFT)].getInt(offset(record) + 12);
+    }
+
+    /**
+     * Byte offset of a record within its chunk.
+     */
+    private static int offset(long record) {
+        return (int) (record & (CHUNK_RECORDS - 1)) * RECORD_SIZE;
+    }
+
+    /**
+     * The number of records, for results that are indexed by int.
+     */
+    private int listSize() throws DataAccessException {
+        if (recordCount > Integer.MAX_VALUE - 8) {
+            throw new DataAccessException("Too many scores for a list, use streamScores or forEachScore");
+        }
+        return (int) recordCount;
+    }
+
+    /**
+     * Replaces the stored scores with the scores listed in the given text,
+     * one score per line. Invalid lines are skipped.
+     */
+    @Override
+    public void saveData(String data) throws DataAccessException {
+        deleteData();
+        long now = System.currentTimeMillis();
+        for (String line : data.split("\n")) {
+            try {
+                int score = Integer.parseInt(line.trim());
+                if (score >= 0 && score <= 100) {
+                    appendScore(score, now, 0);
+                }
+            } catch (NumberFormatException e) {
+                // Ignore invalid entries
+            }
+        }
+    }
+
+    /**
+     * Returns the stored scores in the text format used by DataManager, one score per line.
+     */
+    @Override
+    public String loadData() throws DataAccessException {
+        ByteBuffer[] buffers = records();
+        StringBuilder sb = new StringBuilder();
+        for (long i = 0; i < recordCount; i++) {
+            sb.append(score(buffers, i)).append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns every stored score, oldest first.
+     */
+    @Override
+    public List<Integer> getUserScores() throws DataAccessException {
+        ByteBuffer[] buffers = records();
+        List<Integer> result = new ArrayList<>(listSize());
+        for (long i = 0; i < recordCount; i++) {
+            result.add(score(buffers, i));
+        }
+        return result;
+    }
+
+    /**
+     * Copies every stored score into a primitive series, oldest first.
+     */
+    @Override
+    public IntSeries getScoreSeries() throws DataAccessException {
+        ByteBuffer[] buffers = records();
+        IntSeries series = new IntSeries(listSize());
+        for (long i = 0; i < recordCount; i++) {
+            series.add(score(buffers, i));
+        }
+        return series.snapshot();
+    }
+
+    /**
+     * Streams the stored scores straight from the mapped records.
+     * The mapping stays valid after the stream is closed, so closing is optional here.
+     */
+    @Override
+    public IntStream streamScores() throws DataAccessException {
+        ByteBuffer[] buffers = records();
+        return LongStream.range(0, recordCount).mapToInt(i -> score(buffers, i));
+    }
+
+    /**
+     * Calls the visitor for every record with its score, timestamp and user id.
+     */
+    @Override
+    public void forEachScore(ScoreVisitor visitor) throws DataAccessException {
+        ByteBuffer[] buffers = records();
+        for (long i = 0; i < recordCount; i++) {
+            visitor.visit(score(buffers, i), timestamp(buffers, i), userId(buffers, i));
+        }
+    }
+
+    /**
+     * Summarizes the records stamped within the last {@code windowMillis}.
+     *
+     * Whole hours after the cutoff come from hourly buckets. Only the records of the
+     * hour the cutoff falls in are read, between the first and last record stamped in
+     * that hour, so the cost no longer grows with the length of the log. The buckets
+     * are built by one scan on the first call; a window reaching back before 1970 is
+     * still a scan, as it includes records without a timestamp.
+     */
+    @Override
+    public ScoreSummary summarizeWindow(long windowMillis) throws DataAccessException {
+        long cutoff = System.currentTimeMillis() - windowMillis;
+        ByteBuffer[] buffers = records();
+        ScoreSummary summary = new ScoreSummary();
+        if (cutoff <= 0) {
+            for (long i = 0; i < recordCount; i++) {
+                if (timestamp(buffers, i) >= cutoff) {
+                    summary.record(score(buffers, i));
+                }
+            }
+            return summary;
+        }
+        indexTimeBuckets(buffers);
+        long hour = bucketOf(cutoff);
+        long[] range = bucketRecords.get(hour);
+        if (range != null) {
+            for (long i = range[0]; i <= range[1]; i++) {
+                long timestamp = timestamp(buffers, i);
+                if (timestamp >= cutoff && timestamp < hour + TimeBucketIndex.BUCKET_MILLIS) {
+                    summary.record(score(buffers, i));
+                }
+            }
+        }
+        summary.merge(timeBuckets.summarize(hour + TimeBucketIndex.BUCKET_MILLIS, Long.MAX_VALUE));
+        return summary;
+    }
+
+    private void indexTimeBuckets(ByteBuffer[] buffers) {
+        if (timeBuckets != null) return;
+        timeBuckets = new TimeBucketIndex(Long.MAX_VALUE); // Every hour, windows may reach back any distance
+        for (long i = 0; i < recordCount; i++) {
+            indexRecord(i, score(buffers, i), timestamp(buffers, i));
+        }
+    }
+
+    private void indexRecord(long record, int score, long timestamp) {
+        timeBuckets.record(score, timestamp);
+        if (timestamp <= 0) return;
+        long[] range = bucketRecords.get(bucketOf(timestamp));
+        if (range == null) {
+            bucketRecords.put(bucketOf(timestamp), new long[] {record, record});
+        } else {
+            range[1] = record;
+        }
+    }
+
+    private static long bucketOf(long timestamp) {
+        return Math.floorDiv(timestamp, TimeBucketIndex.BUCKET_MILLIS) * TimeBucketIndex.BUCKET_MILLIS;
+    }
+
+    /**
+     * Appends a score stamped with the current time and no user id.
+     */
+    @Override
+    public void appendScore(int score) throws DataAccessException {
+        appendScore(score, System.currentTimeMillis(), 0);
+    }
+
+    /**
+     * Appends one fixed-width record to the end of the log.
+     * Score must be between 0 and 100.
+     */
+    public void appendScore(int score, long timestamp, int userId) throws DataAccessException {
+        if (score < 0 || score > 100) {
+            throw new DataAccessException("Score must be between 0 and 100");
+        }
+        writeBuffer.clear();
+        writeBuffer.putInt(score).putLong(timestamp).putInt(userId).flip();
+        try {
+            writeFully(writeBuffer, HEADER_SIZE + recordCount * RECORD_SIZE);
+        } catch (IOException e) {
+            throw new DataAccessException("Failed to append score.", e);
+        }
+        if (timeBuckets != null) {
+            indexRecord(recordCount, score, timestamp);
+        }
+        recordCount++;
+    }
+
+    /**
+     * Returns the number of records stored in the log.
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Returns the most recent score, or 0 if no scores exist.
+     */
+    public int getLatestScore() throws DataAccessException {
+        if (recordCount == 0) return 0;
+        return score(records(), recordCount - 1);
+    }
+
+    /**
+     * Calculates the average score directly from the mapped records.
+     * Returns 0.0 if no scores are available.
+     */
+    public double getAverageScore() throws DataAccessException {
+        return streamScores().average().orElse(0.0);
+    }
+
+    /**
+     * Removes every record, leaving only the file header.
+     *
+     * The file is not truncated in place: streams and chunks handed out earlier may
+     * still be reading its mappings, which would then fault, and a mapped file cannot
+     * be truncated at all on Windows. Instead the old file is renamed aside, a new
+     * one with just the header takes its name, and the old one is deleted. Its
+     * mappings stay readable until nothing refers to them; where the file system
+     * will not delete a file that is still mapped, it goes once the JVM exits.
+     */
+    @Override
+    public void deleteData() throws DataAccessException {
+        Path path = file.toPath();
+        Path old = path.resolveSibling(file.getName() + ".old");
+        FileChannel fresh;
+        try {
+            Files.move(path, old, StandardCopyOption.REPLACE_EXISTING);
+            fresh = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new DataAccessException("Failed to delete data.", e);
+        }
+        FileChannel previous = channel;
+        channel = fresh;
+        chunks = new MappedByteBuffer[0];
+        mappedCount = 0;
+        recordCount = 0;
+        timeBuckets = null;
+        bucketRecords.clear();
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            writeFully(header, 0);
+            previous.close();
+        } catch (IOException e) {
+            throw new DataAccessException("Failed to delete data.", e);
+        }
+        try {
+            Files.deleteIfExists(old);
+        } catch (IOException e) {
+            old.toFile().deleteOnExit();
+        }
+    }
+
+    /**
+     * Flushes outstanding writes and closes the underlying file.
+     */
+    @Override
+    public void close() throws IOException {
+        chunks = new MappedByteBuffer[0];
+        channel.force(false);
+        channel.close();
+    }
+
+    private void closeQuietly() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Already failing, nothing more to report
+        }
+    }
+
+    /**
+     * Parses a plain score on a last line that has no line break, which the
+     * reader leaves alone. Returns null if there is none.
+     */
+    private static Integer unterminatedScore(File file, long from) throws IOException {
+        long length = file.length();
+        if (length <= from || length - from > 16) return null;
+        byte[] bytes = new byte[(int) (length - from)];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(from);
+            raf.readFully(bytes);
+        }
+        try {
+            return Integer.parseInt(new String(bytes, StandardCharsets.US_ASCII).trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * One-time conversion of a DataManager text score file into a binary score log.
+     * Nothing happens if the binary log already exists, so this is safe to call on
+     * every start. Records keep their timestamp; older records without one are
+     * stamped with the text file's last modified time. The user id is 0.
+     *
+     * The binary log is written to a temporary file first and renamed into place,
+     * so an interrupted migration is simply repeated on the next start.
+     *
+     * @return the number of scores migrated
+     */
+    public static int migrateFromText(String textFileName, String binaryFileName) throws DataAccessException {
+        File textFile = new File(textFileName);
+        File binaryFile = new File(binaryFileName);
+        if (binaryFile.exists() || !textFile.exists()) return 0;
+
+        long timestamp = textFile.lastModified();
+        File tempFile = new File(binaryFileName + ".tmp");
+        int migrated = 0;
+        try (ScoreLogReader reader = new ScoreLogReader(textFile, 0);
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            while (reader.next()) {
+                int score = reader.score();
+                if (score < 0 || score > 100) continue; // Ignore invalid entries, as DataManager does
+                out.writeInt(score);
+                out.writeLong(reader.timestamp() > 0 ? reader.timestamp() : timestamp);
+                out.writeInt(0);
+                migrated++;
+            }
+            Integer last = unterminatedScore(textFile, reader.position());
+            if (last != null && last >= 0 && last <= 100) {
+                out.writeInt(last);
+                out.writeLong(timestamp);
+                out.writeInt(0);
+                migrated++;
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+            throw new DataAccessException("Failed to migrate text scores.", e);
+        }
+        try {
+            Files.move(tempFile.toPath(), binaryFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            tempFile.delete();
+            throw new DataAccessException("Failed to migrate text scores.", e);
+        }
+        return migrated;
+    }
+}
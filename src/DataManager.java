@@ -8,8 +8,22 @@
  * It implements the DatabaseHandler interface to:
  * - Save and load data to/from a text file
  * - Append new scores with validation
- * - Calculate average and latest scores
+ * - Calculate average and latest scores from running aggregates kept in a
+ *   sidecar summary file, so they do not require re-reading the whole log
+ * - Answer median, percentile and distribution queries from a persisted
+ *   0-100 score histogram
+ * - Stamp every score with the time it was recorded and answer rolling-window
+ *   queries (e.g. the last 7 days) from hourly buckets
  * - Provide motivational messages based on performance
+ * - Optionally queue appends for a background writer thread (write-behind mode)
+ * - Serve several quiz sessions in one JVM safely: appends go through a single
+ *   writer path, and readers work on consistent snapshots of the in-memory state
+ * - Survive crashes: appended records carry a checksum, saveData replaces the
+ *   file atomically, and a torn last record is cut off at startup
+ * - Optionally split the log into sealed segments that a background compactor
+ *   folds into summaries, so aggregate queries never read old records
+ * - Optionally watch a log shared with other processes for changes, so queries
+ *   are answered from memory without touching the file until it changes
  * - Delete/reset stored data
  *
  * It supports error handling using the custom DataAccessException
@@ -17,11 +31,51 @@
  */
 
 import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+public class DataManager implements DatabaseHandler, AutoCloseable {
+    private static final long BUCKET_CHECKPOINT_MILLIS = 60_000;
+    // The sidecar may lag behind the log by this much; startup folds the rest from the log
+    private static final long SUMMARY_SAVE_BYTES = 64 * 1024;
+    private static final long SUMMARY_SAVE_MILLIS = 5_000;
 
-public class DataManager implements DatabaseHandler {
     private String fileName;
-    private List<Integer> scores;
+    private IntSeries scores; // in-memory copy of the raw segments and the live log, once loaded
+    private boolean scoresLoaded;
+    private File summaryFile;
+    private ScoreSummary summary; // covers the live log only
+    private volatile LogIdentity liveIdentity; // the live log file the summary was built from
+    private ScoreSegments segments;
+    private ScoreSummary history; // covers every sealed segment, folded or not
+    private SegmentPolicy segmentPolicy; // null while the log is never rotated
+    private ScheduledExecutorService compactor;
+    private TimeBucketIndex timeBuckets = new TimeBucketIndex(TimeBucketIndex.DEFAULT_RETENTION_MILLIS);
+    private File bucketFile;
+    private long bucketsSavedAt; // when the hourly buckets were last checkpointed
+    private long summarySavedAt; // when the sidecar was last written
+    private long summarySavedLength; // the log length the sidecar covered then
+    private long generation; // bumped whenever the log is rewritten or cleared
+    private volatile WriteBehindLog writeBehind; // null while appends are written synchronously
+    private int writeBehindCapacity;
+    private DurabilityPolicy writeBehindPolicy;
+    private long writeBehindSyncMillis;
+    private ScoreLogRecovery recovery;
+    private volatile ScoreFileWatcher watcher; // null while every query checks the file length
+    private volatile boolean logChanged; // set by the watcher, cleared when the log is checked
+
+    // Guards scores, summary, history, timeBuckets and generation. Held only briefly, never during a normal append.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Single writer for the file: appends, rewrites and catch-ups take turns here.
+    private final ReentrantLock appendLock = new ReentrantLock();
 
     /**
      * Constructor that initializes the DataManager with a filename.
@@ -29,17 +83,20 @@ public class DataManager implements DatabaseHandler {
      */
     public DataManager(String fileName) throws DataAccessException {
         this.fileName = fileName;
-        this.scores = new ArrayList<>();
+        this.scores = new IntSeries();
         initializeFile();
+        loadSummary();
     }
 
     /**
      * Overloaded constructor that accepts initial scores.
+     * They are replaced by the file contents once the scores are first loaded.
      */
     public DataManager(String fileName, List<Integer> initialScores) throws DataAccessException {
         this.fileName = fileName;
-        this.scores = new ArrayList<>(initialScores);
+        this.scores = new IntSeries(initialScores);
         initializeFile();
+        loadSummary();
     }
 
     /**
@@ -57,72 +114,1018 @@ public class DataManager implements DatabaseHandler {
     }
 
     /**
-     * Saves the given string data to the file, overwriting previous content.
+     * Loads the segment index and the sidecar summary file, recovers the log from
+     * an interrupted append and brings the summary up to date with it.
+     * Only the part of the log written after the summary was saved is scanned;
+     * the whole log is only read when the summary is missing, stale, or was built
+     * from another file than the one now in place (see {@link LogIdentity}).
+     * Sealed segments are never read here, their summaries are in the index.
+     */
+    private void loadSummary() throws DataAccessException {
+        long started = System.nanoTime();
+        openSegments();
+        summaryFile = new File(fileName + ".summary");
+        try {
+            summary = ScoreSummary.load(summaryFile);
+        } catch (IOException e) {
+            summary = null; // Unreadable summary, rebuild it from the log
+        }
+        File file = new File(fileName);
+        if (summary == null || !isSummaryOf(summary, file)) {
+            summary = new ScoreSummary();
+        }
+        liveIdentity = identifyLog(summary.getLogLength());
+        summarySavedLength = summary.getLogLength();
+        summarySavedAt = System.currentTimeMillis();
+        try {
+            recovery = ScoreLogRecovery.run(new File(fileName), summary.getLogLength());
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to recover score file.", e);
+        }
+        loadTimeBuckets();
+        refreshSummary();
+        recovery.complete(history.getCount() + summary.getCount(), System.nanoTime() - started);
+    }
+
+    /**
+     * Returns whether a summary read from the sidecar was built from this very log
+     * file. Sidecars written before the identity was kept are read again as well.
+     */
+    private static boolean isSummaryOf(ScoreSummary summary, File file) throws DataAccessException {
+        if (summary.getLogLength() == 0) return true;
+        LogIdentity identity = LogIdentity.decode(summary.getLogIdentity());
+        try {
+            return identity != null
+                    && identity.isSameFile(LogIdentity.attributesOf(file))
+                    && identity.headMatches(file);
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to read score file.", e);
+        }
+    }
+
+    private LogIdentity identifyLog(long covered) throws DataAccessException {
+        try {
+            return LogIdentity.of(new File(fileName), covered);
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to read score file.", e);
+        }
+    }
+
+    /**
+     * Loads the last checkpoint of the hourly buckets and folds in the part of the
+     * live log the summary covers but the checkpoint does not. Without a checkpoint
+     * for the current live log, the buckets are rebuilt from the raw segments and
+     * the live log. The rest of the log is picked up with the summary by catchUp.
+     */
+    private void loadTimeBuckets() throws DataAccessException {
+        bucketFile = new File(fileName + ".buckets");
+        long covered = Math.min(summary.getLogLength(), new File(fileName).length());
+        long[] checkpoint;
+        try {
+            checkpoint = timeBuckets.load(bucketFile);
+        } catch (IOException e) {
+            checkpoint = null; // Unreadable checkpoint, rebuild it from the log
+        }
+        if (checkpoint != null && checkpoint[0] == segments.getNextId() && checkpoint[1] <= covered) {
+            readTimeBuckets(new File(fileName), checkpoint[1], covered);
+        } else {
+            timeBuckets.clear();
+            for (File segment : segments.getRawSegmentFiles()) {
+                readTimeBuckets(segment, 0, Long.MAX_VALUE);
+            }
+            readTimeBuckets(new File(fileName), 0, covered);
+        }
+    }
+
+    private void readTimeBuckets(File file, long from, long to) throws DataAccessException {
+        try (ScoreLogReader reader = new ScoreLogReader(file, from, to)) {
+            while (reader.next()) {
+                timeBuckets.record(reader.score(), reader.timestamp());
+            }
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to read scores from file.", e);
+        }
+    }
+
+    /**
+     * Reads the segment index, repairing it after a crash during rotation or compaction.
+     */
+    private void openSegments() throws DataAccessException {
+        try {
+            segments = ScoreSegments.open(fileName);
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to read score log segments.", e);
+        }
+        history = segments.getHistory();
+    }
+
+    /**
+     * Returns what the startup recovery found: how many records were kept,
+     * how many torn records were dropped and how long it took. Nothing is printed;
+     * callers that want to tell the user check {@link ScoreLogRecovery#isClean()}.
+     */
+    public ScoreLogRecovery getRecoveryReport() {
+        return recovery;
+    }
+
+    /**
+     * Makes sure the summary (and the scores list, if loaded) covers the whole log.
+     * The common case is a look at the attributes of the log and the segment index.
+     * Only when the files were changed by someone else is the append path taken to
+     * fold the change in.
+     */
+    private void refreshSummary() throws DataAccessException {
+        if (isUpToDate()) return;
+        appendLock.lock();
+        try {
+            flush(); // Never wait for the writer thread while holding the write lock
+            lock.writeLock().lock();
+            try {
+                catchUp(true);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (DataAccessException e) {
+            logChanged = true; // Try again on the next query
+            throw e;
+        } finally {
+            appendLock.unlock();
+        }
+        saveSummaryLazily();
+    }
+
+    /**
+     * Compares the length and file key of the log and the segment index with what
+     * the summary was built from. When the watcher has reported a change, the head
+     * of the log is compared as well, which catches a log replaced by another of
+     * the same length on file systems without file keys.
+     */
+    private boolean isUpToDate() {
+        WriteBehindLog log = writeBehind;
+        if (log != null && log.hasPending()) return true; // Our own appends are still on their way
+        boolean checkHead = false;
+        if (watcher != null) {
+            if (!logChanged) return true;
+            logChanged = false; // Cleared before looking, so a change from now on is seen next time
+            checkHead = true;
+        }
+        File file = new File(fileName);
+        try {
+            BasicFileAttributes attributes = LogIdentity.attributesOf(file);
+            long length = attributes == null ? 0 : attributes.size();
+            ScoreSegments current;
+            lock.readLock().lock();
+            try {
+                if (length != summary.getLogLength()) return false;
+                current = segments;
+            } finally {
+                lock.readLock().unlock();
+            }
+            LogIdentity identity = liveIdentity;
+            return identity.isSameFile(attributes) && !current.isIndexChanged()
+                    && (!checkHead || identity.headMatches(file));
+        } catch (IOException e) {
+            return false; // Let catchUp report it
+        }
+    }
+
+    private void catchUp() throws DataAccessException {
+        catchUp(false);
+    }
+
+    /**
+     * Folds lines appended to the log by someone else into the summary and scores list.
+     * If the log shrank or was replaced by another file, both are rebuilt from the
+     * beginning. If the segment index changed, because another DataManager sealed or
+     * compacted the log, it is read again and the scores list is reloaded on demand.
+     * Caller must hold the append lock and the write lock, with no queued appends
+     * (flush before taking the write lock, the writer thread needs the read lock).
+     *
+     * @param thorough also compare the head of the log and the segment index, as a
+     *                 query does once it found the files changed; before an append
+     *                 only the length and file key are compared, unless the log grew
+     */
+    private void catchUp(boolean thorough) throws DataAccessException {
+        File file = new File(fileName);
+        long length;
+        boolean replaced;
+        boolean segmentsChanged;
+        try {
+            BasicFileAttributes attributes = LogIdentity.attributesOf(file);
+            length = attributes == null ? 0 : attributes.size();
+            replaced = length < summary.getLogLength()
+                    || !liveIdentity.isSameFile(attributes)
+                    || ((thorough || length != summary.getLogLength()) && !liveIdentity.headMatches(file));
+            segmentsChanged = thorough && segments.isIndexChanged();
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to read score file.", e);
+        }
+        if (length == summary.getLogLength() && !replaced && !segmentsChanged) return;
+        if (replaced || segmentsChanged) {
+            openSegments();
+            scores = new IntSeries();
+            scoresLoaded = false; // Reloaded on demand, the sealed part may have changed too
+            generation++;
+        }
+        if (replaced) {
+            summary.reset();
+            timeBuckets.clear();
+            for (File segment : segments.getRawSegmentFiles()) {
+                readTimeBuckets(segment, 0, Long.MAX_VALUE);
+            }
+            liveIdentity = identifyLog(0);
+        }
+        try (ScoreLogReader reader = new ScoreLogReader(file, summary.getLogLength(), length)) {
+            while (reader.next()) {
+                summary.record(reader.score());
+                timeBuckets.record(reader.score(), reader.timestamp());
+                if (scoresLoaded) scores.add(reader.score());
+            }
+            summary.setLogLength(reader.position());
+            liveIdentity = liveIdentity.extendedTo(file, summary.getLogLength());
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to read scores from file.", e);
+        }
+    }
+
+    /**
+     * Loads the scores list from the raw segments and the live log the first time
+     * it is needed. The bulk of the history is read without holding any lock, so
+     * appends carry on meanwhile; the few lines they add are picked up under the
+     * locks at the end.
+     */
+    private void ensureScoresLoaded() throws DataAccessException {
+        lock.readLock().lock();
+        long end;
+        long loadGeneration;
+        List<File> sealed;
+        try {
+            if (scoresLoaded) return;
+            end = summary.getLogLength();
+            loadGeneration = generation;
+            sealed = segments.getRawSegmentFiles();
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        flush();
+        IntSeries loaded = new IntSeries();
+        long position;
+        try {
+            position = readHistory(sealed, end, loaded);
+        } catch (DataAccessException e) {
+            position = -1; // A segment was compacted away meanwhile, read again below
+        }
+
+        appendLock.lock();
+        try {
+            flush();
+            lock.writeLock().lock();
+            try {
+                if (scoresLoaded) return;
+                if (generation != loadGeneration || position < 0) {
+                    loaded.clear(); // Log was rewritten or rotated while we read it, start over
+                    readHistory(segments.getRawSegmentFiles(), summary.getLogLength(), loaded);
+                } else {
+                    readScores(new File(fileName), position, summary.getLogLength(), loaded);
+                }
+                scores = loaded;
+                scoresLoaded = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Reads the given sealed segments in full, then the live log up to the given length.
+     *
+     * @return the position in the live log after the last complete line read
+     */
+    private long readHistory(List<File> sealed, long liveLength, IntSeries into) throws DataAccessException {
+        for (File segment : sealed) {
+            readScores(segment, 0, Long.MAX_VALUE, into);
+        }
+        return readScores(new File(fileName), 0, liveLength, into);
+    }
+
+    private long readScores(File file, long from, long to, IntSeries into) throws DataAccessException {
+        try (ScoreLogReader reader = new ScoreLogReader(file, from, to)) {
+            while (reader.next()) {
+                into.add(reader.score());
+            }
+            return reader.position();
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to read scores from file.", e);
+        }
+    }
+
+    /**
+     * Writes the summary to its sidecar file once it lags behind the log by
+     * {@value #SUMMARY_SAVE_BYTES} bytes or {@value #SUMMARY_SAVE_MILLIS} ms, instead
+     * of after every append. The sidecar is only a cache of the checksummed log: after
+     * a crash, startup recovery folds whatever the sidecar does not cover from the log,
+     * so the lag only bounds how much of the log the next start reads.
+     */
+    private synchronized void saveSummaryLazily() {
+        long length;
+        lock.readLock().lock();
+        try {
+            length = summary.getLogLength();
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (length == summarySavedLength) return;
+        if (Math.abs(length - summarySavedLength) < SUMMARY_SAVE_BYTES
+                && System.currentTimeMillis() - summarySavedAt < SUMMARY_SAVE_MILLIS) return;
+        saveSummary(false);
+    }
+
+    /**
+     * Writes the summary to its sidecar file now, and checkpoints the hourly buckets
+     * if the last checkpoint is more than a minute old. Both are only caches of the
+     * log, so a failed write is not fatal: the next start simply folds the log again.
+     * Used when the live log is replaced, and on close.
+     *
+     * @param checkpointBuckets true to checkpoint the hourly buckets now, e.g. because
+     *                          the live log was replaced
+     */
+    private synchronized void saveSummary(boolean checkpointBuckets) {
+        ScoreSummary snapshot;
+        Properties checkpoint = null;
+        long now = System.currentTimeMillis();
+        lock.readLock().lock();
+        try {
+            snapshot = summary.copy();
+            try {
+                // Widen the identity while the log is still short; no-op once it covers the head
+                liveIdentity = liveIdentity.extendedTo(new File(fileName), summary.getLogLength());
+            } catch (IOException e) {
+                // Keep the narrower identity, it is still true
+            }
+            snapshot.setLogIdentity(liveIdentity.encode());
+            if (checkpointBuckets || now - bucketsSavedAt >= BUCKET_CHECKPOINT_MILLIS) {
+                checkpoint = timeBuckets.checkpoint(segments.getNextId(), summary.getLogLength());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        try {
+            snapshot.save(summaryFile);
+            summarySavedAt = now;
+            summarySavedLength = snapshot.getLogLength();
+            if (checkpoint != null) {
+                TimeBucketIndex.save(checkpoint, bucketFile);
+                bucketsSavedAt = now;
+            }
+        } catch (IOException e) {
+            System.err.println("Could not save score summary: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Saves the given string data to the file, overwriting previous content
+     * and removing any sealed segments. A missing line break after the last line is added.
+     * The data is written to a temporary file that then replaces the old file in one
+     * atomic rename, so a crash leaves either the old or the new content, never a mix.
      */
     @Override
     public void saveData(String data) throws DataAccessException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName))) {
-            writer.write(data);
-        } catch (IOException e) {
-            throw new DataAccessException("Failed to save data.", e);
+        appendLock.lock();
+        try {
+            // The write-behind thread holds the old file open, restart it on the new one
+            boolean restartWriteBehind = writeBehind != null;
+            stopWriteBehind();
+            clearSegments();
+            File tempFile = new File(fileName + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(tempFile);
+                 Writer writer = new BufferedWriter(new OutputStreamWriter(out))) {
+                writer.write(data);
+                if (!data.isEmpty() && !data.endsWith("\n")) {
+                    writer.write("\n");
+                }
+                writer.flush();
+                out.getFD().sync();
+            } catch (IOException e) {
+                tempFile.delete();
+                throw new DataAccessException("Failed to save data.", e);
+            }
+            try {
+                Files.move(tempFile.toPath(), Paths.get(fileName),
+                        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                tempFile.delete();
+                throw new DataAccessException("Failed to save data.", e);
+            }
+            if (restartWriteBehind) {
+                enableWriteBehind(writeBehindCapacity, writeBehindPolicy, writeBehindSyncMillis);
+            }
+            lock.writeLock().lock();
+            try {
+                summary.reset();
+                history.reset();
+                timeBuckets.clear();
+                scores.clear();
+                generation++;
+                liveIdentity = identifyLog(0);
+                catchUp();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            appendLock.unlock();
         }
+        saveSummary(true);
     }
 
     /**
-     * Loads the full contents of the file as a single string.
+     * Loads the full contents of the raw segments and the live file as a single string.
      */
     @Override
     public String loadData() throws DataAccessException {
+        List<File> files = new ArrayList<>();
+        appendLock.lock();
+        try {
+            flush();
+            files.addAll(segments.getRawSegmentFiles());
+            files.add(new File(fileName));
+        } finally {
+            appendLock.unlock();
+        }
         StringBuilder sb = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line).append("\n");
+        for (File file : files) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    sb.append(line).append("\n");
+                }
+            } catch (IOException e) {
+                throw new DataAccessException("Failed to load data.", e);
             }
-        } catch (IOException e) {
-            throw new DataAccessException("Failed to load data.", e);
         }
         return sb.toString();
     }
 
     /**
-     * Loads user scores from the file into the scores list.
-     * Skips invalid entries.
+     * Returns a read-only snapshot of the scores list. The list is loaded from the
+     * file once and then kept up to date by appends, so later calls do not re-read
+     * the file. Invalid entries in the file are skipped.
+     * Scores in segments the compactor has folded are no longer included.
+     * The list is a view of {@link #getScoreSeries()}, so nothing is copied or boxed.
+     * Prefer {@link #streamScores()} or {@link #forEachScore(ScoreVisitor)} for
+     * large histories, they do not hold every score in memory.
      */
     @Override
     public List<Integer> getUserScores() throws DataAccessException {
-        scores.clear();
-        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                try {
-                    scores.add(Integer.parseInt(line.trim()));
-                } catch (NumberFormatException e) {
-                    // Ignore invalid entries
+        return getScoreSeries().asList();
+    }
+
+    /**
+     * Returns a read-only snapshot of the scores as a primitive series. The snapshot
+     * shares its array with the in-memory scores instead of copying them, so it costs
+     * the same however long the history is.
+     */
+    @Override
+    public IntSeries getScoreSeries() throws DataAccessException {
+        refreshSummary();
+        ensureScoresLoaded();
+        lock.readLock().lock();
+        try {
+            return scores.snapshot();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Streams the scores in the raw segments and the live file, oldest first,
+     * in constant memory. Close the stream when done to release the files.
+     */
+    @Override
+    public IntStream streamScores() throws DataAccessException {
+        List<ScoreLogReader> readers = openReaders();
+        IntStream stream = readers.get(0).stream();
+        for (int i = 1; i < readers.size(); i++) {
+            stream = IntStream.concat(stream, readers.get(i).stream());
+        }
+        return stream;
+    }
+
+    /**
+     * Calls the visitor for every score in the raw segments and the live file,
+     * oldest first, in constant memory. The text format stores no user id, so it is
+     * passed as 0, as is the timestamp of records written before timestamps were kept.
+     */
+    @Override
+    public void forEachScore(ScoreVisitor visitor) throws DataAccessException {
+        List<ScoreLogReader> readers = openReaders();
+        try {
+            for (ScoreLogReader reader : readers) {
+                while (reader.next()) {
+                    visitor.visit(reader.score(), reader.timestamp(), 0);
                 }
             }
         } catch (IOException e) {
             throw new DataAccessException("Unable to read scores from file.", e);
+        } finally {
+            closeAll(readers);
         }
-        return scores;
     }
 
     /**
-     * Appends a new score to the file and updates the internal scores list.
+     * Opens a reader on every raw segment and one on the live file that stops
+     * before any line still being appended. Queued write-behind scores are flushed
+     * first. The files are opened under the append lock, so a segment cannot be
+     * compacted away in between; once open it stays readable even if it is deleted.
+     */
+    private List<ScoreLogReader> openReaders() throws DataAccessException {
+        refreshSummary();
+        List<ScoreLogReader> readers = new ArrayList<>();
+        appendLock.lock();
+        try {
+            flush();
+            for (File segment : segments.getRawSegmentFiles()) {
+                readers.add(new ScoreLogReader(segment, 0));
+            }
+            lock.readLock().lock();
+            try {
+                readers.add(new ScoreLogReader(new File(fileName), 0, summary.getLogLength()));
+            } finally {
+                lock.readLock().unlock();
+            }
+            return readers;
+        } catch (IOException e) {
+            closeAll(readers);
+            throw new DataAccessException("Unable to read scores from file.", e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private static void closeAll(List<ScoreLogReader> readers) {
+        for (ScoreLogReader reader : readers) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // Only reading, nothing to lose
+            }
+        }
+    }
+
+    /**
+     * Appends a new score to the file and updates the internal scores list
+     * and the running aggregates.
+     * In write-behind mode the score is only queued; see {@link #appendScoreAsync(int)}.
      * Score must be between 0 and 100.
      */
     @Override
     public void appendScore(int score) throws DataAccessException {
+        if (writeBehind != null) {
+            appendScoreAsync(score);
+            return;
+        }
+        if (score < 0 || score > 100) {
+            throw new DataAccessException("Score must be between 0 and 100");
+        }
+
+        long timestamp = System.currentTimeMillis();
+        byte[] line = ScoreLogReader.encode(score, timestamp);
+        appendLock.lock();
+        try {
+            long end = catchUpForAppend(line.length);
+            try (OutputStream out = new FileOutputStream(fileName, true)) {
+                out.write(line);
+            } catch (IOException e) {
+                throw new DataAccessException("Failed to append score.", e);
+            }
+            if (new File(fileName).length() == end) {
+                record(score, timestamp, line.length);
+            } else {
+                catchUpAfterAppend();
+            }
+            rotateIfNeeded();
+        } finally {
+            appendLock.unlock();
+        }
+        saveSummaryLazily();
+    }
+
+    /**
+     * Appends a batch of scores with the times they were recorded, e.g. when
+     * importing another kiosk's history. The whole batch is written with a single
+     * write and folded into the aggregates under one lock, instead of once per score.
+     * Nothing is written unless every score is between 0 and 100.
+     * A timestamp of 0 means the time is unknown; such scores count in no time window.
+     *
+     * @param batch      the scores, oldest first
+     * @param timestamps when each score was recorded, in epoch milliseconds
+     * @param count      number of entries of both arrays to append
+     */
+    public void appendScores(int[] batch, long[] timestamps, int count) throws DataAccessException {
+        if (count < 0 || count > batch.length || count > timestamps.length) {
+            throw new IllegalArgumentException("Count out of range: " + count);
+        }
+        ByteArrayOutputStream lines = new ByteArrayOutputStream(count * 24);
+        for (int i = 0; i < count; i++) {
+            if (batch[i] < 0 || batch[i] > 100) {
+                throw new DataAccessException("Score must be between 0 and 100");
+            }
+            byte[] line = ScoreLogReader.encode(batch[i], timestamps[i]);
+            lines.write(line, 0, line.length);
+        }
+        if (count == 0) return;
+
+        appendLock.lock();
+        try {
+            flush(); // Queued write-behind scores come first
+            long end = catchUpForAppend(lines.size());
+            try (OutputStream out = new FileOutputStream(fileName, true)) {
+                lines.writeTo(out);
+            } catch (IOException e) {
+                throw new DataAccessException("Failed to append scores.", e);
+            }
+            if (new File(fileName).length() == end) {
+                lock.writeLock().lock();
+                try {
+                    for (int i = 0; i < count; i++) {
+                        if (scoresLoaded) scores.add(batch[i]);
+                        summary.record(batch[i]);
+                        timeBuckets.record(batch[i], timestamps[i]);
+                    }
+                    summary.setLogLength(summary.getLogLength() + lines.size());
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            } else {
+                catchUpAfterAppend();
+            }
+            rotateIfNeeded();
+        } finally {
+            appendLock.unlock();
+        }
+        saveSummaryLazily();
+    }
+
+    /**
+     * Picks up scores appended by anyone else before writing our own.
+     * Caller must hold the append lock.
+     *
+     * @param bytes length of the records about to be written
+     * @return the length the log will have if nobody else appends meanwhile
+     */
+    private long catchUpForAppend(int bytes) throws DataAccessException {
+        lock.writeLock().lock();
+        try {
+            catchUp();
+            return summary.getLogLength() + bytes;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Another process appended between our catch-up and our write, so our records
+     * are not where the summary would put them. Reads them back from the file
+     * instead, in the order they actually landed with the others.
+     * Caller must hold the append lock.
+     */
+    private void catchUpAfterAppend() throws DataAccessException {
+        lock.writeLock().lock();
+        try {
+            catchUp();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds an appended score to the in-memory state.
+     */
+    private void record(int score, long timestamp, int bytes) {
+        lock.writeLock().lock();
+        try {
+            if (scoresLoaded) scores.add(score);
+            summary.record(score);
+            timeBuckets.record(score, timestamp);
+            summary.setLogLength(summary.getLogLength() + bytes);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Switches appends to write-behind mode. Scores are put into a bounded queue
+     * and written in batches by a single background thread, instead of opening and
+     * closing the file for every score. The scores list and the running aggregates
+     * are updated straight away, so queries see queued scores immediately.
+     *
+     * The writer thread assumes it is the only one appending to the file, so do not
+     * use write-behind on a score file other processes append to as well.
+     *
+     * @param capacity           maximum number of scores waiting to be written
+     * @param policy             when written scores are forced to disk
+     * @param syncIntervalMillis time between forces for {@link DurabilityPolicy#INTERVAL}
+     */
+    public void enableWriteBehind(int capacity, DurabilityPolicy policy, long syncIntervalMillis)
+            throws DataAccessException {
+        appendLock.lock();
+        try {
+            stopWriteBehind();
+            writeBehindCapacity = capacity;
+            writeBehindPolicy = policy;
+            writeBehindSyncMillis = syncIntervalMillis;
+            writeBehind = new WriteBehindLog(new File(fileName), capacity, policy, syncIntervalMillis,
+                    this::saveSummaryLazily);
+        } catch (IOException e) {
+            throw new DataAccessException("Could not start write-behind mode", e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Appends a score and returns a future that completes once the score is durable
+     * according to the write-behind durability policy. Without write-behind mode the
+     * score is written synchronously and the returned future is already complete.
+     * Score must be between 0 and 100.
+     */
+    public CompletableFuture<Void> appendScoreAsync(int score) throws DataAccessException {
         if (score < 0 || score > 100) {
             throw new DataAccessException("Score must be between 0 and 100");
         }
-        
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName, true))) {
-            writer.write(score + "\n");
+        long timestamp = System.currentTimeMillis();
+        byte[] line = ScoreLogReader.encode(score, timestamp);
+        appendLock.lock();
+        try {
+            WriteBehindLog log = writeBehind;
+            if (log == null) {
+                appendScore(score);
+                return CompletableFuture.completedFuture(null);
+            }
+            if (!log.hasPending()) {
+                lock.writeLock().lock();
+                try {
+                    catchUp(); // Pick up scores appended by anyone else first
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            CompletableFuture<Void> done;
+            try {
+                done = log.submit(line);
+            } catch (IOException e) {
+                throw new DataAccessException("Failed to append score.", e);
+            }
+            record(score, timestamp, line.length);
+            rotateIfNeeded();
+            return done;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until every queued write-behind score has been written to the file.
+     * Does nothing when write-behind mode is off.
+     */
+    public void flush() throws DataAccessException {
+        WriteBehindLog log = writeBehind;
+        if (log == null) return;
+        try {
+            log.flush();
+        } catch (IOException e) {
+            throw new DataAccessException("Failed to write queued scores.", e);
+        }
+    }
+
+    /**
+     * Caches the state of the log instead of checking the file on every query.
+     * A background watcher marks the cache stale when the log, its segments or the
+     * segment index change on disk, through file system events where available and
+     * by comparing size and modification time every {@code pollMillis}. Use this
+     * when several processes share one score file: queries cost nothing until one
+     * of them appends, and then only the new records are read.
+     * Changes made within {@code pollMillis} of a query may not be seen by it yet.
+     */
+    public void enableChangeWatching(long pollMillis) throws DataAccessException {
+        appendLock.lock();
+        try {
+            stopWatching();
+            logChanged = true; // Check once, the file may have changed before the watcher started
+            watcher = new ScoreFileWatcher(new File(fileName), pollMillis, () -> logChanged = true);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Goes back to checking the file length on every query.
+     * Caller must hold the append lock.
+     */
+    private void stopWatching() {
+        ScoreFileWatcher current = watcher;
+        if (current == null) return;
+        watcher = null;
+        current.close();
+    }
+
+    /**
+     * Writes any queued scores, stops the write-behind thread, the segment
+     * compactor and the change watcher, and returns to synchronous appends without
+     * further rotation. Sealed segments stay part of the history.
+     */
+    @Override
+    public void close() throws DataAccessException {
+        appendLock.lock();
+        try {
+            segmentPolicy = null; // A compaction pass already waiting for the lock does nothing
+            if (compactor != null) {
+                compactor.shutdownNow();
+                compactor = null;
+            }
+            stopWatching();
+            stopWriteBehind();
+        } finally {
+            appendLock.unlock();
+        }
+        saveSummary(true);
+    }
+
+    /**
+     * Writes any queued scores and stops the write-behind thread.
+     * Caller must hold the append lock.
+     */
+    private void stopWriteBehind() throws DataAccessException {
+        WriteBehindLog log = writeBehind;
+        if (log == null) return;
+        try {
+            log.close();
         } catch (IOException e) {
-            throw new DataAccessException("Failed to append score.", e);
+            throw new DataAccessException("Failed to write queued scores.", e);
+        } finally {
+            writeBehind = null;
+        }
+    }
+
+    /**
+     * Splits the log into segments. Once the live file reaches the size or age set
+     * by the policy it is sealed and a new live file is started; a background
+     * compactor folds sealed segments the policy no longer keeps into a rolled-up
+     * summary and deletes them. Aggregate queries combine the segment summaries with
+     * the live summary, so they cost the same no matter how long the history is.
+     * Sealed segments are kept across restarts even when this is not called.
+     */
+    public void enableSegmentation(SegmentPolicy policy) throws DataAccessException {
+        appendLock.lock();
+        try {
+            segmentPolicy = policy;
+            try {
+                segments.ensureIndex();
+            } catch (IOException e) {
+                throw new DataAccessException("Unable to write score log segments.", e);
+            }
+            if (compactor != null) {
+                compactor.shutdownNow();
+            }
+            compactor = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "score-compactor-" + new File(fileName).getName());
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = policy.getCompactionIntervalMillis();
+            compactor.scheduleWithFixedDelay(this::compactQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Seals the live file if the segment policy says it is full or old enough.
+     * Caller must hold the append lock and not the write lock.
+     */
+    private void rotateIfNeeded() throws DataAccessException {
+        SegmentPolicy policy = segmentPolicy;
+        if (policy == null) return;
+        long liveBytes;
+        lock.readLock().lock();
+        try {
+            liveBytes = summary.getLogLength();
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (policy.shouldSeal(liveBytes, segments.getLiveStartedAt(), System.currentTimeMillis())) {
+            rotate();
         }
-        scores.add(score);
+    }
+
+    /**
+     * Renames the live file to a new segment and starts an empty live file.
+     * The scores list does not change, it already holds the segment's scores in order.
+     * Caller must hold the append lock.
+     */
+    private void rotate() throws DataAccessException {
+        // The write-behind thread holds the live file open, restart it on the new one
+        boolean restartWriteBehind = writeBehind != null;
+        stopWriteBehind();
+        ScoreSummary sealed;
+        long id;
+        lock.writeLock().lock();
+        try {
+            catchUp();
+            sealed = summary.copy();
+            try {
+                id = segments.sealLiveFile();
+            } catch (IOException e) {
+                throw new DataAccessException("Unable to seal score log segment.", e);
+            }
+            initializeFile();
+            history.merge(sealed);
+            summary.reset();
+            liveIdentity = identifyLog(0);
+            generation++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // Reset the live summary before listing the segment, so a crash in between
+        // can never count the segment's records twice
+        saveSummary(false);
+        try {
+            segments.addSealed(id, sealed, System.currentTimeMillis());
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to write score log segments.", e);
+        }
+        saveSummary(true); // The bucket checkpoint refers to the live log that was just sealed
+        if (restartWriteBehind) {
+            enableWriteBehind(writeBehindCapacity, writeBehindPolicy, writeBehindSyncMillis);
+        }
+    }
+
+    /**
+     * Runs one compaction pass now: seals the live file if it has grown too old,
+     * then folds the sealed segments the policy no longer keeps as raw records.
+     * The background compactor calls this on its own; calling it directly is only
+     * needed to compact immediately. Does nothing when segmentation is off.
+     *
+     * @return the number of records whose raw form was removed
+     */
+    public long compactSegments() throws DataAccessException {
+        appendLock.lock();
+        try {
+            SegmentPolicy policy = segmentPolicy;
+            if (policy == null) return 0;
+            rotateIfNeeded();
+            long folded;
+            try {
+                folded = segments.compact(policy, System.currentTimeMillis());
+            } catch (IOException e) {
+                throw new DataAccessException("Unable to compact score log segments.", e);
+            }
+            if (folded == 0) return 0;
+            lock.writeLock().lock();
+            try {
+                if (scoresLoaded) {
+                    scores.dropFirst((int) Math.min(folded, scores.size()));
+                }
+                generation++;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return folded;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compactSegments();
+        } catch (DataAccessException e) {
+            System.err.println("Could not compact score log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Forgets every sealed segment. Caller must hold the append lock.
+     */
+    private void clearSegments() throws DataAccessException {
+        try {
+            segments.clear();
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to remove score log segments.", e);
+        }
+    }
+
+    /**
+     * Returns the aggregates of the whole history: the sealed segments followed by
+     * the live file. Caller must hold the read lock.
+     */
+    private ScoreSummary totals() {
+        if (history.getCount() == 0) return summary;
+        ScoreSummary total = history.copy();
+        total.merge(summary);
+        return total;
     }
 
     /**
@@ -130,8 +1133,13 @@ public class DataManager implements DatabaseHandler {
      * Returns 0 if no scores exist.
      */
     public int getLatestScore() throws DataAccessException {
-        getUserScores(); // Ensure latest data
-        return scores.isEmpty() ? 0 : scores.get(scores.size() - 1);
+        refreshSummary(); // Ensure latest data
+        lock.readLock().lock();
+        try {
+            return totals().getLast();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -139,13 +1147,146 @@ public class DataManager implements DatabaseHandler {
      * Returns 0.0 if no scores are available.
      */
     public double getAverageScore() throws DataAccessException {
-        getUserScores();
-        if (scores.isEmpty()) return 0.0;
-        int sum = 0;
-        for (int score : scores) {
-            sum += score;
+        refreshSummary();
+        lock.readLock().lock();
+        try {
+            return totals().getAverage();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of scores stored in the file.
+     */
+    public long getScoreCount() throws DataAccessException {
+        refreshSummary();
+        lock.readLock().lock();
+        try {
+            return totals().getCount();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the highest score stored in the file, or 0 if no scores exist.
+     */
+    public int getHighestScore() throws DataAccessException {
+        refreshSummary();
+        lock.readLock().lock();
+        try {
+            return totals().getMax();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the lowest score stored in the file, or 0 if no scores exist.
+     */
+    public int getLowestScore() throws DataAccessException {
+        refreshSummary();
+        lock.readLock().lock();
+        try {
+            return totals().getMin();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the median score, or 0 if no scores exist.
+     */
+    public int getMedianScore() throws DataAccessException {
+        return getPercentileScore(50);
+    }
+
+    /**
+     * Returns the score at the given percentile (0 to 100), e.g. 90 for the score
+     * that 90% of attempts did not exceed. Returns 0 if no scores exist.
+     * Answered from the score histogram, without reading the log.
+     */
+    public int getPercentileScore(double percentile) throws DataAccessException {
+        refreshSummary();
+        lock.readLock().lock();
+        try {
+            return totals().getPercentile(percentile);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the percentage of stored scores that are lower than the given score,
+     * for "you scored better than X% of participants". Returns 0.0 if no scores exist.
+     */
+    public double getPercentileRank(int score) throws DataAccessException {
+        refreshSummary();
+        lock.readLock().lock();
+        try {
+            return totals().getPercentileRank(score);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns how many stored scores fall into each bucket of the given width,
+     * starting at 0. With a width of 10 the buckets are 0-9, 10-19, ..., 90-99 and 100.
+     */
+    public long[] getScoreDistribution(int bucketWidth) throws DataAccessException {
+        refreshSummary();
+        lock.readLock().lock();
+        try {
+            return totals().getDistribution(bucketWidth);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the aggregates (count, average, histogram, ...) of the scores recorded
+     * in the last {@code windowMillis} milliseconds, to the hour. Served from hourly
+     * buckets, so the cost depends on the window, not on the size of the history.
+     * Scores recorded before timestamps were kept are not included.
+     */
+    @Override
+    public ScoreSummary summarizeWindow(long windowMillis) throws DataAccessException {
+        refreshSummary();
+        lock.readLock().lock();
+        try {
+            return timeBuckets.summarizeWindow(windowMillis, System.currentTimeMillis());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the aggregates of the scores recorded in the last given number of days.
+     */
+    public ScoreSummary summarizeLastDays(int days) throws DataAccessException {
+        return summarizeWindow(days * 24 * TimeBucketIndex.BUCKET_MILLIS);
+    }
+
+    /**
+     * Returns the aggregates of the scores recorded in the last given number of hours.
+     */
+    public ScoreSummary summarizeLastHours(int hours) throws DataAccessException {
+        return summarizeWindow(hours * TimeBucketIndex.BUCKET_MILLIS);
+    }
+
+    /**
+     * Sets how far back window queries can reach; hourly buckets older than this
+     * are dropped. The default is 90 days.
+     */
+    public void setTimeWindowRetention(long retentionMillis) {
+        lock.writeLock().lock();
+        try {
+            timeBuckets.setRetentionMillis(retentionMillis);
+        } finally {
+            lock.writeLock().unlock();
         }
-        return (double) sum / scores.size();
     }
 
      /**
@@ -161,15 +1302,34 @@ public class DataManager implements DatabaseHandler {
     }
 
     /**
-     * Deletes all data in the file and clears the internal scores list.
+     * Deletes all data in the file and any sealed segments, and clears the internal scores list.
      */
     @Override
     public void deleteData() throws DataAccessException {
-        try (PrintWriter writer = new PrintWriter(fileName)) {
-            writer.print("");
-            scores.clear();
-        } catch (IOException e) {
-            throw new DataAccessException("Failed to delete data.", e);
+        appendLock.lock();
+        try {
+            flush();
+            clearSegments();
+            try (PrintWriter writer = new PrintWriter(fileName)) {
+                writer.print("");
+            } catch (IOException e) {
+                throw new DataAccessException("Failed to delete data.", e);
+            }
+            lock.writeLock().lock();
+            try {
+                scores.clear();
+                scoresLoaded = true; // An empty file has an empty list
+                summary.reset();
+                history.reset();
+                timeBuckets.clear();
+                liveIdentity = identifyLog(0);
+                generation++;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            appendLock.unlock();
         }
+        saveSummary(true);
     }
 }
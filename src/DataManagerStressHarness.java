@@ -0,0 +1,314 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Command line stress harness for DataManager under several quiz sessions at once.
+ *
+ * Usage: java DataManagerStressHarness [writer threads] [appends per writer] [reader threads]
+ *
+ * Two rounds run against a fresh score file in a temporary directory:
+ * - synchronous: writer threads append single scores and batches through one
+ *   DataManager, while one writer appends through a second DataManager on the same
+ *   file, standing in for another kiosk process. Reader threads query both, so
+ *   each keeps catching up with what the other wrote.
+ * - write-behind: writer threads append through the write-behind queue, with
+ *   and without waiting for durability, while reader threads query.
+ * Readers check that the count never goes backwards and that the scores list
+ * is never behind a count read before it. After each round the harness checks that:
+ * - every line of the file is a complete record with a matching CRC
+ * - a full rescan of the file finds exactly the scores the writers appended
+ * - the count, average, lowest, highest, latest score and histogram of every
+ *   DataManager agree with the rescan, and so does its scores list, in file order
+ * - a DataManager opened afresh agrees as well, from its summary sidecar
+ * Exits with status 1 if any check fails.
+ */
+public class DataManagerStressHarness {
+    private static final int BATCH = 10;
+
+    /**
+     * What one writer appended.
+     */
+    private static class Tally {
+        long count;
+        long sum;
+        final long[] histogram = new long[ScoreSummary.MAX_SCORE + 1];
+
+        void add(int score) {
+            count++;
+            sum += score;
+            histogram[score]++;
+        }
+    }
+
+    private interface Append {
+        void append(int writer, Random random, Tally tally) throws Exception;
+    }
+
+    private final int writers;
+    private final int appendsPerWriter;
+    private final int readers;
+    private final List<String> problems = Collections.synchronizedList(new ArrayList<>());
+
+    private DataManagerStressHarness(int writers, int appendsPerWriter, int readers) {
+        this.writers = writers;
+        this.appendsPerWriter = appendsPerWriter;
+        this.readers = readers;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int writers = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int appendsPerWriter = args.length > 1 ? Integer.parseInt(args[1]) : 5_000;
+        int readers = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        DataManagerStressHarness harness = new DataManagerStressHarness(writers, appendsPerWriter, readers);
+
+        Path dir = Files.createTempDirectory("score-stress");
+        try {
+            harness.synchronousRound(dir.resolve("shared.log").toString());
+            harness.writeBehindRound(dir.resolve("write-behind.log").toString());
+        } finally {
+            File[] files = dir.toFile().listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dir.toFile().delete();
+        }
+
+        if (harness.problems.isEmpty()) {
+            System.out.println("PASS: records, CRCs, aggregates and score lists agree with a full rescan");
+        } else {
+            System.out.println("FAIL: " + harness.problems.size() + " problems");
+            harness.problems.stream().limit(20).forEach(problem -> System.out.println("  " + problem));
+            System.exit(1);
+        }
+    }
+
+    private void synchronousRound(String fileName) throws Exception {
+        try (DataManager local = new DataManager(fileName);
+             DataManager other = new DataManager(fileName)) {
+            DataManager[] managers = {local, other};
+            Tally[] tallies = run("synchronous, two DataManagers on one file", managers, (writer, random, tally) -> {
+                if (writer == 0) {
+                    int score = random.nextInt(101);
+                    other.appendScore(score);
+                    tally.add(score);
+                } else if (writer % 2 == 0) {
+                    int[] batch = new int[BATCH];
+                    long[] timestamps = new long[BATCH];
+                    for (int i = 0; i < BATCH; i++) {
+                        batch[i] = random.nextInt(101);
+                        timestamps[i] = System.currentTimeMillis();
+                        tally.add(batch[i]);
+                    }
+                    local.appendScores(batch, timestamps, BATCH);
+                } else {
+                    int score = random.nextInt(101);
+                    local.appendScore(score);
+                    tally.add(score);
+                }
+            });
+            verify(fileName, managers, tallies);
+        }
+        reopen(fileName);
+    }
+
+    private void writeBehindRound(String fileName) throws Exception {
+        try (DataManager manager = new DataManager(fileName)) {
+            manager.enableWriteBehind(256, DurabilityPolicy.PER_BATCH, 0);
+            DataManager[] managers = {manager};
+            Tally[] tallies = run("write-behind", managers, (writer, random, tally) -> {
+                int score = random.nextInt(101);
+                if (writer % 2 == 0) {
+                    manager.appendScoreAsync(score).join();
+                } else {
+                    manager.appendScore(score);
+                }
+                tally.add(score);
+            });
+            manager.flush();
+            verify(fileName, managers, tallies);
+        }
+        reopen(fileName);
+    }
+
+    /**
+     * Runs the writers and readers of one round.
+     *
+     * @return what each writer appended
+     */
+    private Tally[] run(String round, DataManager[] managers, Append append) throws InterruptedException {
+        Tally[] tallies = new Tally[writers];
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch writersDone = new CountDownLatch(writers);
+        AtomicLong reads = new AtomicLong();
+        List<Thread> workers = new ArrayList<>();
+
+        for (int t = 0; t < writers; t++) {
+            int id = t;
+            tallies[t] = new Tally();
+            int appends = id % 2 == 0 && id > 0 && managers.length > 1 ? appendsPerWriter / BATCH : appendsPerWriter;
+            workers.add(new Thread(() -> {
+                Random random = new Random(id);
+                try {
+                    start.await();
+                    for (int i = 0; i < appends; i++) {
+                        append.append(id, random, tallies[id]);
+                    }
+                } catch (Throwable e) {
+                    problems.add("Writer " + id + " failed: " + e);
+                } finally {
+                    writersDone.countDown();
+                }
+            }, "stress-writer-" + t));
+        }
+        for (int t = 0; t < readers; t++) {
+            DataManager manager = managers[t % managers.length];
+            int id = t;
+            workers.add(new Thread(() -> {
+                try {
+                    start.await();
+                    long lastCount = 0;
+                    while (writersDone.getCount() > 0) {
+                        long count = manager.getScoreCount();
+                        if (count < lastCount) {
+                            problems.add("Reader " + id + " saw the count go back from " + lastCount + " to " + count);
+                        }
+                        manager.getAverageScore();
+                        manager.getLatestScore();
+                        manager.getPercentileScore(90);
+                        int listed = manager.getScoreSeries().size();
+                        if (listed < count) {
+                            problems.add("Reader " + id + " got " + listed + " scores after a count of " + count);
+                        }
+                        lastCount = count;
+                        reads.addAndGet(5);
+                    }
+                } catch (Throwable e) {
+                    problems.add("Reader " + id + " failed: " + e);
+                }
+            }, "stress-reader-" + t));
+        }
+
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        long started = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        long appended = 0;
+        for (Tally tally : tallies) {
+            appended += tally.count;
+        }
+        System.out.printf("%s: %,d scores by %d writers, %,d concurrent reads, in %.2f s (%,.0f scores/sec)%n",
+                round, appended, writers, reads.get(), seconds, appended / seconds);
+        return tallies;
+    }
+
+    /**
+     * Rescans the file and compares it with the writers' tallies and with every manager.
+     */
+    private void verify(String fileName, DataManager[] managers, Tally[] tallies) throws Exception {
+        File file = new File(fileName);
+        Tally expected = new Tally();
+        for (Tally tally : tallies) {
+            expected.count += tally.count;
+            expected.sum += tally.sum;
+            for (int i = 0; i <= ScoreSummary.MAX_SCORE; i++) {
+                expected.histogram[i] += tally.histogram[i];
+            }
+        }
+
+        ScoreSummary rescan = new ScoreSummary();
+        IntSeries inFile = new IntSeries();
+        long unchecked = 0;
+        try (ScoreLogReader reader = new ScoreLogReader(file, 0)) {
+            while (reader.next()) {
+                rescan.record(reader.score());
+                inFile.add(reader.score());
+                if (!reader.isChecksummed()) unchecked++;
+            }
+            if (reader.getSkippedCount() > 0) {
+                problems.add(fileName + ": " + reader.getSkippedCount() + " lines fail their CRC or do not parse");
+            }
+            if (reader.position() != file.length()) {
+                problems.add(fileName + ": " + (file.length() - reader.position()) + " bytes of unterminated record at the end");
+            }
+        }
+        if (unchecked > 0) {
+            problems.add(fileName + ": " + unchecked + " records without a CRC");
+        }
+        if (rescan.getCount() != expected.count || rescan.getSum() != expected.sum) {
+            problems.add(fileName + ": rescan found " + rescan.getCount() + " scores summing to " + rescan.getSum()
+                    + ", writers appended " + expected.count + " summing to " + expected.sum);
+        }
+        for (int i = 0; i <= ScoreSummary.MAX_SCORE; i++) {
+            if (rescan.getHistogramCount(i) != expected.histogram[i]) {
+                problems.add(fileName + ": rescan found score " + i + " " + rescan.getHistogramCount(i)
+                        + " times, writers appended it " + expected.histogram[i] + " times");
+                break;
+            }
+        }
+
+        for (int m = 0; m < managers.length; m++) {
+            compare(fileName + " manager " + m, managers[m], rescan);
+            IntSeries listed = managers[m].getScoreSeries();
+            if (!listed.asList().equals(inFile.asList())) {
+                problems.add(fileName + " manager " + m + ": scores list of " + listed.size()
+                        + " differs from the " + inFile.size() + " scores in the file");
+            }
+        }
+    }
+
+    /**
+     * Opens the file afresh and compares what it reports with a rescan.
+     */
+    private void reopen(String fileName) throws Exception {
+        ScoreSummary rescan = new ScoreSummary();
+        try (ScoreLogReader reader = new ScoreLogReader(new File(fileName), 0)) {
+            while (reader.next()) {
+                rescan.record(reader.score());
+            }
+        }
+        try (DataManager reopened = new DataManager(fileName)) {
+            if (!reopened.getRecoveryReport().isClean()) {
+                problems.add(fileName + ": recovery had to repair the file: " + reopened.getRecoveryReport());
+            }
+            compare(fileName + " reopened", reopened, rescan);
+        }
+    }
+
+    private void compare(String what, DataManager manager, ScoreSummary rescan) throws DataAccessException {
+        if (manager.getScoreCount() != rescan.getCount()) {
+            problems.add(what + ": count " + manager.getScoreCount() + ", rescan " + rescan.getCount());
+        }
+        if (Math.abs(manager.getAverageScore() - rescan.getAverage()) > 1e-9) {
+            problems.add(what + ": average " + manager.getAverageScore() + ", rescan " + rescan.getAverage());
+        }
+        if (manager.getLowestScore() != rescan.getMin() || manager.getHighestScore() != rescan.getMax()) {
+            problems.add(what + ": range " + manager.getLowestScore() + "-" + manager.getHighestScore()
+                    + ", rescan " + rescan.getMin() + "-" + rescan.getMax());
+        }
+        if (manager.getLatestScore() != rescan.getLast()) {
+            problems.add(what + ": latest " + manager.getLatestScore() + ", rescan " + rescan.getLast());
+        }
+        long[] histogram = manager.getScoreDistribution(1);
+        for (int i = 0; i <= ScoreSummary.MAX_SCORE; i++) {
+            if (histogram[i] != rescan.getHistogramCount(i)) {
+                problems.add(what + ": score " + i + " counted " + histogram[i] + " times, rescan " + rescan.getHistogramCount(i));
+                break;
+            }
+        }
+    }
+}
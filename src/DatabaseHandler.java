@@ -1,4 +1,5 @@
 import java.util.List;
+import java.util.stream.IntStream;
 
 /**
  * Interface: DatabaseHandler
@@ -10,8 +11,10 @@ import java.util.List;
  * within the application. It is implemented by the DataManager class and 
  * includes core methods for:
  * - Saving and loading string-based data
- * - Managing user score entries
+ * - Managing user score entries, as a list or a primitive series
  * - Appending validated scores
+ * - Streaming over stored scores in constant memory
+ * - Summarizing the scores of a recent time window
  * - Resetting stored data when required
  * 
  * This promotes abstraction and flexibility by allowing different storage 
@@ -43,6 +46,15 @@ public interface DatabaseHandler {
      */
     List<Integer> getUserScores() throws DataAccessException;
 
+    /**
+     * Retrieves the user scores as a primitive series, so sums, averages and the
+     * latest score can be computed without boxing every entry.
+     * 
+     * @return Read-only series of scores, oldest first.
+     * @throws DataAccessException if reading or parsing fails.
+     */
+    IntSeries getScoreSeries() throws DataAccessException;
+
     /**
      * Appends a new validated score to the storage.
      * 
@@ -51,6 +63,34 @@ public interface DatabaseHandler {
      */
     void appendScore(int score) throws DataAccessException;
 
+    /**
+     * Streams the stored scores, oldest first, without loading them into a list.
+     * The stream holds the underlying storage open and should be closed after use,
+     * e.g. with try-with-resources.
+     * 
+     * @return A stream of scores.
+     * @throws DataAccessException if the storage cannot be opened.
+     */
+    IntStream streamScores() throws DataAccessException;
+
+    /**
+     * Calls the visitor once for every stored score record, oldest first,
+     * without loading them into a list.
+     * 
+     * @param visitor The callback receiving each record.
+     * @throws DataAccessException if reading fails.
+     */
+    void forEachScore(ScoreVisitor visitor) throws DataAccessException;
+
+    /**
+     * Summarizes the scores recorded within the given time window, ending now.
+     * 
+     * @param windowMillis Length of the window in milliseconds (e.g. 7 days).
+     * @return Count, sum, average, lowest, highest and histogram of those scores.
+     * @throws DataAccessException if reading fails.
+     */
+    ScoreSummary summarizeWindow(long windowMillis) throws DataAccessException;
+
     /**
      * Deletes or clears all stored data (e.g., resets file content).
      * 
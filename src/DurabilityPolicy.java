@@ -0,0 +1,15 @@
+/**
+ * Decides when scores queued by the write-behind mode of DataManager are forced
+ * to disk (fsync). Until then they only live in the operating system's file cache
+ * and may be lost if the machine crashes.
+ */
+public enum DurabilityPolicy {
+    /** Force the file after every batch the writer thread writes. Safest, slowest. */
+    PER_BATCH,
+
+    /** Force the file at most once per configured interval. */
+    INTERVAL,
+
+    /** Never force the file, leave it to the operating system. Fastest. */
+    NEVER
+}
@@ -0,0 +1,221 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compact binary snapshot of a GamificationEngine, for a fast start.
+ *
+ * The snapshot holds a table of badge names followed by every user, in leaderboard
+ * order, as name, points and an index into the badge table. Restoring reads it
+ * back in one pass and puts the users into the engine in the stored order, so the
+ * leaderboard does not have to be sorted again. The current span of each daily,
+ * weekly and monthly leaderboard is stored after the users, so those boards survive
+ * a restart too; a span that ended while the application was down comes back as
+ * that period's last result. A CRC32 at the end of the file detects a damaged
+ * snapshot; the JSON file written by GamificationStore remains the portable format.
+ *
+ * Layout: magic, version, badge count, badge names, user count,
+ * users (name, points, badge index or -1), period count, periods (name, first day
+ * of the span as an epoch day, row count, rows (user index, points)), CRC32 of
+ * everything before it. Badge indexes are shorts, so configured tier sets with
+ * more than 127 badges fit. Only this version of the layout is read.
+ */
+public class EngineSnapshot {
+    private static final int MAGIC = 0x4D485147; // "MHQG"
+    private static final int VERSION = 3;
+    private static final long MAX_EPOCH_DAY = LocalDate.MAX.toEpochDay(); // larger start days are damage
+
+    private final File file;
+
+    public EngineSnapshot(String fileName) {
+        this.file = new File(fileName);
+    }
+
+    public boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Writes a snapshot of the engine. The snapshot goes to a temporary file first
+     * and replaces the old one in a single rename.
+     */
+    public void write(GamificationEngine engine) throws DataAccessException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        List<Badge> badges = engine.getAvailableBadges();
+        Map<Badge, Integer> badgeIndex = new IdentityHashMap<>();
+        for (int i = 0; i < badges.size(); i++) {
+            badgeIndex.put(badges.get(i), i);
+        }
+        List<User> users = engine.getUsers();
+        Map<User, Integer> userIndex = new IdentityHashMap<>();
+        for (int i = 0; i < users.size(); i++) {
+            userIndex.put(users.get(i), i);
+        }
+        try (FileOutputStream stream = new FileOutputStream(tempFile)) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(stream), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(badges.size());
+            for (Badge badge : badges) {
+                out.writeUTF(badge.getBadgeName());
+            }
+            out.writeInt(users.size());
+            for (User user : users) {
+                out.writeUTF(user.getName());
+                out.writeInt(user.getTotalPoints());
+                out.writeShort(badgeIndex.getOrDefault(user.getBadge(), -1));
+            }
+            out.writeInt(LeaderboardPeriod.values().length);
+            for (LeaderboardPeriod period : LeaderboardPeriod.values()) {
+                writePeriod(out, engine, period, userIndex);
+            }
+            out.flush();
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            stream.getFD().sync();
+        } catch (IOException e) {
+            tempFile.delete();
+            throw new DataAccessException("Failed to write engine snapshot.", e);
+        }
+        try {
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            tempFile.delete();
+            throw new DataAccessException("Failed to write engine snapshot.", e);
+        }
+    }
+
+    /**
+     * Writes the current span of one periodic leaderboard. Users who joined after
+     * the user list was taken are left out.
+     */
+    private static void writePeriod(DataOutputStream out, GamificationEngine engine, LeaderboardPeriod period,
+                                    Map<User, Integer> userIndex) throws IOException {
+        LocalDate start;
+        LeaderboardSnapshot board;
+        do { // Start and board from the same span, should it rotate meanwhile
+            start = engine.getPeriodStart(period);
+            board = engine.getPeriodLeaderboard(period);
+        } while (!start.equals(engine.getPeriodStart(period)));
+        List<Leaderboard.Entry> rows = new ArrayList<>();
+        for (Leaderboard.Entry entry : board.entries()) {
+            if (userIndex.containsKey(entry.getUser())) {
+                rows.add(entry);
+            }
+        }
+        out.writeUTF(period.name());
+        out.writeLong(start.toEpochDay());
+        out.writeInt(rows.size());
+        for (Leaderboard.Entry entry : rows) {
+            out.writeInt(userIndex.get(entry.getUser()));
+            out.writeInt(entry.getPoints());
+        }
+    }
+
+    /**
+     * Adds the users in the snapshot to the engine, in leaderboard order, and puts
+     * back the periodic leaderboards. Badges are matched to the engine's badges by
+     * name, then every user gets the badge their points earn under the engine's
+     * current tiers. Nothing is added if the snapshot is damaged.
+     *
+     * @return the number of users restored
+     */
+    public int restore(GamificationEngine engine) throws DataAccessException {
+        if (!file.exists()) return 0;
+        List<User> users;
+        List<SavedPeriod> periods = new ArrayList<>();
+        try (FileInputStream stream = new FileInputStream(file)) {
+            CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(stream, 64 * 1024), new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC) {
+                throw new DataAccessException("Not an engine snapshot: " + file.getName());
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new DataAccessException("Unsupported engine snapshot version " + version);
+            }
+            Badge[] badges = new Badge[in.readInt()];
+            for (int i = 0; i < badges.length; i++) {
+                badges[i] = engine.findBadge(in.readUTF());
+            }
+            int count = in.readInt();
+            users = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                User user = new User(in.readUTF(), in.readInt());
+                int badge = in.readShort();
+                if (badge >= 0 && badge < badges.length) {
+                    user.setBadge(badges[badge]);
+                }
+                users.add(user);
+            }
+            int periodCount = in.readInt();
+            for (int p = 0; p < periodCount; p++) {
+                periods.add(readPeriod(in, count));
+            }
+            long expected = checked.getChecksum().getValue();
+            if (in.readLong() != expected) {
+                throw new DataAccessException("Engine snapshot is damaged: " + file.getName());
+            }
+        } catch (IOException e) {
+            throw new DataAccessException("Failed to read engine snapshot.", e);
+        }
+        for (int i = 0; i < users.size(); i++) {
+            users.set(i, engine.addUser(users.get(i)));
+        }
+        for (SavedPeriod saved : periods) {
+            List<User> periodUsers = new ArrayList<>(saved.users.length);
+            for (int user : saved.users) {
+                periodUsers.add(users.get(user));
+            }
+            engine.restorePeriod(saved.period, saved.start, periodUsers, saved.points);
+        }
+        engine.assignBadges(); // The tiers may have changed since the snapshot was written
+        return users.size();
+    }
+
+    /**
+     * The current span of one periodic leaderboard as read from the file.
+     */
+    private static final class SavedPeriod {
+        LeaderboardPeriod period;
+        LocalDate start;
+        int[] users; // indexes into the user list
+        int[] points;
+    }
+
+    private SavedPeriod readPeriod(DataInputStream in, int userCount) throws IOException, DataAccessException {
+        SavedPeriod saved = new SavedPeriod();
+        String name = in.readUTF();
+        for (LeaderboardPeriod period : LeaderboardPeriod.values()) {
+            if (period.name().equals(name)) {
+                saved.period = period;
+            }
+        }
+        long start = in.readLong();
+        int rows = in.readInt();
+        if (saved.period == null || Math.abs(start) > MAX_EPOCH_DAY || rows < 0 || rows > userCount) {
+            throw new DataAccessException("Engine snapshot is damaged: " + file.getName());
+        }
+        saved.start = LocalDate.ofEpochDay(start);
+        saved.users = new int[rows];
+        saved.points = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            saved.users[i] = in.readInt();
+            saved.points[i] = in.readInt();
+            if (saved.users[i] < 0 || saved.users[i] >= userCount) {
+                throw new DataAccessException("Engine snapshot is damaged: " + file.getName());
+            }
+        }
+        return saved;
+    }
+}
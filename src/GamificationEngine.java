@@ -1,6 +1,3 @@
-
-
-import java.io.File;
 /**
  * Class: GamificationEngine
  * Creator: Siti Norlie Yana
@@ -9,94 +6,558 @@ import java.io.File;
  * Date: 18/6/2025
  * Description: This class implements the core logic of the gamification system. It handles:
  * - Tracking users and awarding points based on quiz results
- * - Assigning badges according to predefined thresholds
- * - Maintaining and sorting the leaderboard
+ * - Assigning badges according to configurable point thresholds
+ * - Maintaining the leaderboard in an order-statistic tree, so an award and a
+ *   rank lookup cost O(log n) instead of a full sort
+ * - Answering top-N, rank, neighbourhood and paged leaderboard queries without
+ *   going through every user
+ * - Keeping daily, weekly and monthly leaderboards of the points earned in the
+ *   current span next to the all-time one, rotating them as the calendar moves on
+ * - Keeping one record per player in a registry keyed by normalized name, so a
+ *   repeat attempt finds the player in O(1) and adds to their existing total
+ * - Staying consistent when several quiz sessions finish at once: points are
+ *   added atomically, and badges and the leaderboard are updated under a
+ *   lock, after which the engine publishes an immutable leaderboard snapshot
+ *   that queries and the GUI read without locking
  *
  * It implements the RewardSystem interface to ensure standardized methods
  * for awarding points, accessing leaderboard and badge functionality.
  *
- * The engine supports extensibility by storing available badges in a list
- * and assigning them dynamically based on user performance.
+ * The engine supports extensibility by reading its badge tiers from
+ * assets/badges/tiers.json (falling back to the built-in Gold, Silver, Bronze and
+ * Keep Learning tiers) and assigning them dynamically based on user performance.
+ * Tier sets can be reloaded while the application runs.
  */
 
+import java.io.File;
+import java.text.Normalizer;
+import java.time.Clock;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
 
 public class GamificationEngine implements RewardSystem {
-    private List<User> users = new ArrayList<>(); // stores all users who have taken the quiz
-    private List<Badge> availableBadges = new ArrayList<>(); // stores the badges the system can assign (Gold, Silver, Bronze, Keep Learning.)
+    private final Leaderboard leaderboard = new Leaderboard(); // all users who have taken the quiz, highest points first
+    private final Map<String, User> registry = new ConcurrentHashMap<>(); // every known user, by normalized name
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private volatile User currentUser; // the user added most recently
+    // Guards the leaderboard and badge assignment. Points themselves are added without it.
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile LeaderboardSnapshot published = LeaderboardSnapshot.empty(); // the board as of the last change
+    private final List<Runnable> publishListeners = new CopyOnWriteArrayList<>();
+    private LeaderboardSnapshot announced = published; // the last snapshot listeners were told about, guarded by lock
+    private volatile BadgeTiers badgeTiers; // the badges the system can assign, looked up by points
+    private final PeriodicLeaderboards periods; // points earned today, this week and this month, guarded by lock
+    private volatile Map<LeaderboardPeriod, LeaderboardSnapshot> publishedPeriods;
+    private Map<LeaderboardPeriod, LeaderboardSnapshot> announcedPeriods; // the period boards listeners were told about, guarded by lock
 
+    /**
+     * Creates an engine with the badge tiers from {@link BadgeTiers#DEFAULT_FILE},
+     * or the built-in tiers if that file is missing or invalid.
+     */
     public GamificationEngine() {
-        // Use File.separator for cross-platform compatibility
-        String basePath = "assets" + File.separator + "badges" + File.separator;
-        availableBadges.add(new Badge("Gold", basePath + "Gold.png", 15, "Score 15+ points"));
-        availableBadges.add(new Badge("Silver", basePath + "Silver.png", 10, "Score 10–14 points"));
-        availableBadges.add(new Badge("Bronze", basePath + "Bronze.png", 5, "Score 5–9 points"));
-        availableBadges.add(new Badge("Keep Learning", basePath + "Keep_Learning.png", 0, "Less than 5 points"));
+        this(loadDefaultTiers(), Clock.systemDefaultZone());
     }
 
-    public void addUser(User user) {
-        users.add(user);
+    public GamificationEngine(BadgeTiers badgeTiers) {
+        this(badgeTiers, Clock.systemDefaultZone());
     }
 
+    /**
+     * @param clock decides which day, week and month the periodic leaderboards are in
+     */
+    public GamificationEngine(BadgeTiers badgeTiers, Clock clock) {
+        this.badgeTiers = badgeTiers;
+        this.periods = new PeriodicLeaderboards(clock, PeriodicLeaderboards.DEFAULT_RETAINED);
+        this.publishedPeriods = periodSnapshots();
+        this.announcedPeriods = publishedPeriods;
+    }
+
+    private static BadgeTiers loadDefaultTiers() {
+        File tiersFile = new File(BadgeTiers.DEFAULT_FILE);
+        if (tiersFile.exists()) {
+            try {
+                return BadgeTiers.load(tiersFile);
+            } catch (DataAccessException e) {
+                System.err.println("Using the built-in badge tiers: " + e.getMessage());
+            }
+        }
+        return BadgeTiers.defaults();
+    }
+
+    /**
+     * Returns the key users are registered under: the name trimmed, with runs of
+     * whitespace reduced to one space, in Unicode compatibility form and lower case.
+     * "Alice", " alice " and "ALICE" are the same user.
+     */
+    public static String normalizeName(String name) {
+        if (isNormalizedAscii(name)) return name; // Most names; shares the name's String as the key
+        String key = Normalizer.normalize(name.trim(), Normalizer.Form.NFKC);
+        return WHITESPACE.matcher(key).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isNormalizedAscii(String name) {
+        char previous = ' ';
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c >= 0x80 || (c >= 'A' && c <= 'Z') || c < ' ' || (c == ' ' && previous == ' ')) {
+                return false;
+            }
+            previous = c;
+        }
+        return previous != ' ';
+    }
+
+    /**
+     * Returns the registered user with the given name, creating and registering
+     * them with 0 points if there is none. Costs O(1) and never takes the engine lock;
+     * the user joins the leaderboard once their first award is settled.
+     */
+    public User getOrCreateUser(String name) {
+        User user = registry.computeIfAbsent(normalizeName(name), key -> new User(name.trim()));
+        currentUser = user;
+        return user;
+    }
+
+    /**
+     * Returns the registered user with the given name, or null if there is none. O(1).
+     */
+    public User findUser(String name) {
+        return registry.get(normalizeName(name));
+    }
+
+    /**
+     * Registers a user and places them on the leaderboard, returning the record
+     * that is now registered under their name. Adding the same user twice has no
+     * effect. If a different record with the same name is already registered, e.g.
+     * from a state file written before names were deduplicated, its points are
+     * added to the registered record and that record is returned instead.
+     */
+    public User addUser(User user) {
+        lock.lock();
+        try {
+            User registered = registry.putIfAbsent(normalizeName(user.getName()), user);
+            if (registered != null && registered != user) {
+                registered.awardPoints(user.getTotalPoints());
+                place(registered, false); // Points from an older record, not earned now
+                user = registered;
+            } else {
+                leaderboard.add(user);
+            }
+            currentUser = user;
+            return user;
+        } finally {
+            publishAndUnlock();
+        }
+    }
+
+    /**
+     * Awards points for a finished quiz. Safe to call from several threads at once,
+     * also for the same user: no points are lost, and the badge and leaderboard
+     * place end up matching the user's final total. If a different record is
+     * registered under the user's name, the points go to that record.
+     */
     public void awardPointsToUser(User user, int correctAnswers) {
-        int points = correctAnswers * 2;
-        user.awardPoints(points);
+        addQuizPoints(user, correctAnswers);
+        settle(user);
+    }
+
+    /**
+     * Adds the points for a finished quiz to the user, and nothing else: the badge
+     * and leaderboard place follow once the user is passed to {@link #settle(Collection)}.
+     * Used by AwardPipeline so a finishing quiz never waits for leaderboard work.
+     * The points go to the record registered under the user's name; a user whose
+     * name is new is registered.
+     */
+    public void addQuizPoints(User user, int correctAnswers) {
+        registered(user).awardPoints(correctAnswers * 2);
+    }
+
+    /**
+     * Returns the record registered under the user's name, registering the user if
+     * the name is new. Only registered records are awarded and placed, so another
+     * User object with the same name never shows up on the leaderboard twice. O(1).
+     */
+    private User registered(User user) {
+        User registered = registry.putIfAbsent(normalizeName(user.getName()), user);
+        return registered != null ? registered : user;
+    }
+
+    /**
+     * Brings the badges and leaderboard places of a batch of users in line with
+     * their points, under a single lock. Users not on the leaderboard yet
+     * are added to it.
+     */
+    public void settle(Collection<User> users) {
+        lock.lock();
+        try {
+            for (User user : users) {
+                settle(user);
+            }
+        } finally {
+            publishAndUnlock();
+        }
+    }
+
+    /**
+     * Brings the user's badge and leaderboard place in line with their points.
+     * Both are worked out from the total read under the lock, so whichever
+     * award settles last leaves the final total's badge and place behind.
+     * A user not on the leaderboard yet is added to it; a different record with
+     * the same name stands in for the registered one.
+     */
+    private void settle(User user) {
+        lock.lock();
+        try {
+            place(registered(user), true);
+        } finally {
+            publishAndUnlock();
+        }
+    }
+
+    /**
+     * Places the user on the all-time leaderboard by their current total. If
+     * {@code earnedNow}, the points gained since the user was last placed (all of
+     * them for a user new to the board) are credited to the periodic leaderboards.
+     * The user must be the registered record. Caller must hold the lock.
+     */
+    private void place(User user, boolean earnedNow) {
+        int placed = leaderboard.pointsOf(user);
+        int points = user.getTotalPoints();
+        if (placed < 0) {
+            leaderboard.add(user, points);
+        } else {
+            leaderboard.update(user, points); // Moves only this user, O(log n)
+        }
         assignBadge(user);
-        updateLeaderboard();
+        int earned = points - Math.max(placed, 0);
+        if (earnedNow && earned != 0) {
+            periods.record(user, earned);
+        }
     }
 
+    /**
+     * Gives the user the badge their points earn. The badge is only replaced when
+     * the user has crossed a tier threshold. Caller must hold the lock.
+     */
     private void assignBadge(User user) {
-        for (Badge badge : availableBadges) {
-            if (badge.checkRequirement(user.getTotalPoints())) {
-                user.setBadge(badge);
-                break;
+        Badge earned = badgeTiers.badgeFor(user.getTotalPoints());
+        if (earned != user.getBadge()) {
+            user.setBadge(earned);
+        }
+    }
+
+    /**
+     * Switches to a new set of badge tiers and gives every user the badge they earn
+     * under it. Queries running meanwhile see either the old badges or the new ones.
+     */
+    public void setBadgeTiers(BadgeTiers tiers) {
+        lock.lock();
+        try {
+            badgeTiers = tiers;
+            for (User user : leaderboard.asList()) {
+                assignBadge(user);
             }
+            leaderboard.touch(); // Same order, new badges: readers should redraw
+        } finally {
+            publishAndUnlock();
         }
     }
 
+    /**
+     * Reads the badge tiers from the given file and switches to them.
+     * The current tiers stay in place if the file cannot be read.
+     */
+    public void reloadBadgeTiers(File file) throws DataAccessException {
+        setBadgeTiers(BadgeTiers.load(file));
+    }
+
+    /**
+     * Reads the badge tiers from {@link BadgeTiers#DEFAULT_FILE} again and switches to them.
+     */
+    public void reloadBadgeTiers() throws DataAccessException {
+        reloadBadgeTiers(new File(BadgeTiers.DEFAULT_FILE));
+    }
+
     public void assignBadges() {
-        for (User user : users) {
-            assignBadge(user);
+        lock.lock();
+        try {
+            for (User user : leaderboard.asList()) {
+                assignBadge(user);
+            }
+            leaderboard.touch();
+        } finally {
+            publishAndUnlock();
+        }
+    }
+
+    /**
+     * Forgets every user.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            leaderboard.clear();
+            periods.clear();
+            registry.clear();
+            currentUser = null;
+        } finally {
+            publishAndUnlock();
         }
     }
 
     @Override
     public int getTotalPoints() {
-        return users.stream().mapToInt(User::getTotalPoints).sum();
+        int total = 0;
+        for (User user : getUsers()) {
+            total += user.getTotalPoints();
+        }
+        return total;
     }
 
     /**
-     * Sort users by their total points in descending order.
+     * Re-places users whose points were changed directly through {@link User#awardPoints(int)}
+     * rather than through this engine. Users whose points did not change are not moved.
      */
     public void updateLeaderboard() {
-        users.sort((u1, u2) -> u2.getTotalPoints() - u1.getTotalPoints());
+        lock.lock();
+        try {
+            for (User user : leaderboard.snapshot().asList()) {
+                if (user.getTotalPoints() != leaderboard.pointsOf(user)) {
+                    place(user, true);
+                }
+            }
+        } finally {
+            publishAndUnlock();
+        }
     }
 
     public void showLeaderboard() {
         System.out.println("\n🏆 Final Leaderboard:");
-        for (User u : users) {
+        for (User u : getUsers()) {
             System.out.println(u.getName() + " - " + u.getTotalPoints() + " pts - Badge: " + u.getBadgeName());
         }
     }
 
+    /**
+     * Returns the leaderboard as of the last change, without locking. The snapshot
+     * never changes; compare {@link LeaderboardSnapshot#getVersion()} with the
+     * version last drawn to see whether there is anything new to show.
+     */
+    public LeaderboardSnapshot getLeaderboardSnapshot() {
+        return published;
+    }
+
+    /**
+     * Returns the standings for the period's current span (today, this week or
+     * this month), by points earned in it, without locking.
+     */
+    public LeaderboardSnapshot getPeriodLeaderboard(LeaderboardPeriod period) {
+        return publishedPeriods.get(period);
+    }
+
+    /**
+     * Returns the final standings of the period's last spans that are kept, newest first.
+     */
+    public List<PeriodicLeaderboards.Result> getPastPeriodLeaderboards(LeaderboardPeriod period) {
+        lock.lock();
+        try {
+            return periods.getHistory(period);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the first day of the period's current span.
+     */
+    public LocalDate getPeriodStart(LeaderboardPeriod period) {
+        lock.lock();
+        try {
+            return periods.getStart(period);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Puts back the standings of a periodic leaderboard span saved earlier; see
+     * {@link PeriodicLeaderboards#restore}. The users must already be registered,
+     * and the all-time leaderboard is left as it is.
+     */
+    public void restorePeriod(LeaderboardPeriod period, LocalDate start, List<User> users, int[] points) {
+        lock.lock();
+        try {
+            periods.restore(period, start, users, points);
+        } finally {
+            publishAndUnlock();
+        }
+    }
+
+    /**
+     * Rotates out the periodic leaderboards whose span is over. Awards do this on
+     * their own; LeaderboardService also calls it when a span ends, so quiet
+     * periods roll over on time.
+     */
+    public void rotatePeriods() {
+        lock.lock();
+        try {
+            periods.rotateIfNeeded();
+        } finally {
+            publishAndUnlock();
+        }
+    }
+
+    /**
+     * Returns how long until the next periodic leaderboard is due to rotate, 0 if one is overdue.
+     */
+    public long millisUntilPeriodRotation() {
+        lock.lock();
+        try {
+            return periods.millisUntilRotation();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a copy of the list of all users, highest points first.
+     * Costs O(n); use the leaderboard queries below when only some rows are needed.
+     */
     public List<User> getUsers() {
-        return users;
+        return new ArrayList<>(published.asList());
+    }
+
+    public int getUserCount() {
+        return published.size();
+    }
+
+    /**
+     * Returns the user's place on the leaderboard, 1 for the leader,
+     * or 0 if the user has not been added.
+     */
+    public int getRank(User user) {
+        return published.rankOf(user);
+    }
+
+    /**
+     * Returns the top {@code k} leaderboard rows.
+     */
+    public List<Leaderboard.Entry> getTopUsers(int k) {
+        return published.topN(k);
+    }
+
+    /**
+     * Returns the user's leaderboard row with up to {@code radius} rows above and
+     * below it, or an empty list if the user has not been added.
+     */
+    public List<Leaderboard.Entry> getUsersAround(User user, int radius) {
+        return published.around(user, radius);
+    }
+
+    /**
+     * Returns one page of the leaderboard; page 0 starts with the leader.
+     */
+    public List<Leaderboard.Entry> getLeaderboardPage(int page, int pageSize) {
+        return published.page(page, pageSize);
+    }
+
+    public int getLeaderboardPageCount(int pageSize) {
+        return published.getPageCount(pageSize);
+    }
+
+    /**
+     * Returns the badges the engine can assign, highest requirement first.
+     */
+    public List<Badge> getAvailableBadges() {
+        return badgeTiers.getBadges();
+    }
+
+    public BadgeTiers getBadgeTiers() {
+        return badgeTiers;
+    }
+
+    /**
+     * Returns the badge the given points earn under the current tiers,
+     * or null if they earn none.
+     */
+    public Badge badgeFor(int points) {
+        return badgeTiers.badgeFor(points);
+    }
+
+    /**
+     * Returns the available badge with the given name, or null if there is none.
+     */
+    public Badge findBadge(String badgeName) {
+        return badgeTiers.findBadge(badgeName);
+    }
+
+    /**
+     * Runs the listener whenever the engine has published a new leaderboard snapshot,
+     * all-time or periodic, including when a periodic leaderboard rotates.
+     * It runs on the thread that made the change, after the engine lock is released,
+     * so it must be quick; LeaderboardService only wakes its own thread from it.
+     */
+    public void addPublishListener(Runnable listener) {
+        publishListeners.add(listener);
+    }
+
+    public void removePublishListener(Runnable listener) {
+        publishListeners.remove(listener);
+    }
+
+    /**
+     * Publishes the boards as they are now and releases the lock. Publishing costs O(1):
+     * the snapshots share the leaderboards' immutable nodes. Listeners are told once
+     * the outermost hold of the lock is released, if any board changed.
+     */
+    private void publishAndUnlock() {
+        published = leaderboard.snapshot();
+        for (LeaderboardPeriod period : LeaderboardPeriod.values()) {
+            if (periods.snapshot(period) != publishedPeriods.get(period)) {
+                publishedPeriods = periodSnapshots();
+                break;
+            }
+        }
+        boolean announce = lock.getHoldCount() == 1
+                && (published != announced || publishedPeriods != announcedPeriods);
+        if (announce) {
+            announced = published;
+            announcedPeriods = publishedPeriods;
+        }
+        lock.unlock();
+        if (announce) {
+            for (Runnable listener : publishListeners) {
+                listener.run();
+            }
+        }
+    }
+
+    private Map<LeaderboardPeriod, LeaderboardSnapshot> periodSnapshots() {
+        Map<LeaderboardPeriod, LeaderboardSnapshot> snapshots = new EnumMap<>(LeaderboardPeriod.class);
+        for (LeaderboardPeriod period : LeaderboardPeriod.values()) {
+            snapshots.put(period, periods.snapshot(period));
+        }
+        return snapshots;
     }
 
     @Override
     public void awardPoints(int points) {
         // Award points to the current user if needed
-        if (!users.isEmpty()) {
-            users.get(users.size() - 1).awardPoints(points);
+        User user = currentUser;
+        if (user != null) {
+            user.awardPoints(points);
+            settle(user);
         }
     }
 
     @Override
     public Badge getBadge() {
         // Return the badge of the current user or null if no users exist
-        if (!users.isEmpty()) {
-            return users.get(users.size() - 1).getBadge();
-        }
-        return null;
+        User user = currentUser;
+        return user != null ? user.getBadge() : null;
     }
 }
@@ -14,30 +14,38 @@ import javax.swing.*;
 
 import java.awt.*;
 import java.awt.event.*;
-import java.util.ArrayList;
 import java.util.List;
 import java.io.File;
 
 public class GamificationGUI {
-    private static List<User> allUsers = new ArrayList<>(); // Global user list for leaderboard
 
     private JFrame frame;
     private CardLayout cardLayout;
     private JPanel mainPanel;
 
-    private GamificationEngine engine = new GamificationEngine();
+    // Shared by every window, so a user appears on the leaderboard once however often they play
+    private final GamificationEngine engine = LeaderboardService.getInstance().getEngine();
+    private static final int HEADER_LINES = 2; // leaderboard lines above the first row
     private User currentUser;
+    private long leaderboardVersionShown = -1; // snapshot version the leaderboard was last drawn from
+    private LeaderboardService.Listener leaderboardListener; // removed again when the window closes
 
     public GamificationGUI(User user, int correctAnswers) {
-        this.currentUser = user;
-        engine.addUser(user);
-        allUsers.add(user);
-        engine.awardPointsToUser(user, correctAnswers);
+        this.currentUser = engine.addUser(user); // The registered record if this user played before
+        // Settled on the pipeline thread; the points are added at once, the badge and place follow
+        LeaderboardService.getInstance().submit(currentUser, correctAnswers);
 
         frame = new JFrame("Mental Health Awareness Gamification");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setSize(500, 600);
         frame.setLocationRelativeTo(null); // Center the window
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                // The service outlives the window; a listener left behind would keep it in memory
+                LeaderboardService.getInstance().removeListener(leaderboardListener);
+            }
+        });
 
         cardLayout = new CardLayout();
         mainPanel = new JPanel(cardLayout);
@@ -138,21 +146,24 @@ public class GamificationGUI {
         sb.append("═".repeat(40)).append("\n\n");
         sb.append("👤 Name: ").append(currentUser.getName()).append("\n\n");
         sb.append("⭐ Points Earned: ").append(currentUser.getTotalPoints()).append(" points\n\n");
-        sb.append("🏅 Badge Achieved: ").append(currentUser.getBadgeName()).append("\n\n");
+        // Worked out from the points here, the user's own badge is set once the pipeline settles the award
+        Badge badge = engine.badgeFor(currentUser.getTotalPoints());
+        String badgeName = badge != null ? badge.getBadgeName() : "None";
+        sb.append("🏅 Badge Achieved: ").append(badgeName).append("\n\n");
         
         // Add badge description
-        if (currentUser.getBadge() != null) {
-            sb.append("📋 Badge Requirements: ").append(currentUser.getBadge().getRequirement()).append("\n\n");
+        if (badge != null) {
+            sb.append("📋 Badge Requirements: ").append(badge.getRequirement()).append("\n\n");
         }
         
         // Add motivational message based on badge
-        String motivation = getMotivationalMessage(currentUser.getBadgeName());
+        String motivation = getMotivationalMessage(badgeName);
         sb.append("💬 ").append(motivation);
         
         resultArea.setText(sb.toString());
 
         // Display badge image
-        String badgeIconPath = currentUser.getBadgeIconPath();
+        String badgeIconPath = badge != null ? badge.getBadgeIconPath() : "";
         if (badgeIconPath != null && !badgeIconPath.isEmpty()) {
             try {
                 ImageIcon icon = new ImageIcon(badgeIconPath);
@@ -172,7 +183,7 @@ public class GamificationGUI {
                 Image scaledImg = img.getScaledInstance(scaledWidth, scaledHeight, Image.SCALE_SMOOTH);
                 badgeImage.setIcon(new ImageIcon(scaledImg));
             } catch (Exception ex) {
-                badgeImage.setText("Badge: " + currentUser.getBadgeName());
+                badgeImage.setText("Badge: " + badgeName);
                 badgeImage.setFont(new Font("Times New Roman", Font.BOLD, 16));
             }
         }
@@ -270,30 +281,60 @@ public class GamificationGUI {
 
         backBtn.addActionListener(e -> cardLayout.show(mainPanel, "result"));
         refreshBtn.addActionListener(e -> updateLeaderboardContent(leaderboardArea));
+        leaderboardListener = change -> SwingUtilities.invokeLater(() -> applyLeaderboardChange(leaderboardArea, change));
+        LeaderboardService.getInstance().addListener(leaderboardListener);
 
         return panel;
     }
 
+    // Draws the latest leaderboard snapshot, and does nothing if that snapshot is already shown
     private void updateLeaderboardContent(JTextArea leaderboardArea) {
-        leaderboardArea.setText("");
-        allUsers.sort((u1, u2) -> u2.getTotalPoints() - u1.getTotalPoints());
+        LeaderboardSnapshot board = engine.getLeaderboardSnapshot();
+        if (board.getVersion() != leaderboardVersionShown) {
+            drawLeaderboard(leaderboardArea, board);
+        }
+    }
+
+    // Rewrites only the rows the change reaches, or the whole table if this window missed a change
+    private void applyLeaderboardChange(JTextArea leaderboardArea, LeaderboardService.Change change) {
+        LeaderboardSnapshot before = change.getPrevious();
+        LeaderboardSnapshot after = change.getCurrent();
+        if (leaderboardVersionShown != before.getVersion() || before.isEmpty() || after.isEmpty()) {
+            drawLeaderboard(leaderboardArea, after);
+            return;
+        }
+        int first = change.getFirstAffectedRank();
+        if (first > 0) {
+            int last = Math.min(change.getLastAffectedRank(), Math.max(before.size(), after.size()));
+            try {
+                int start = leaderboardArea.getLineStartOffset(HEADER_LINES + first - 1);
+                int end = last >= before.size()
+                        ? leaderboardArea.getDocument().getLength()
+                        : leaderboardArea.getLineStartOffset(HEADER_LINES + last);
+                StringBuilder sb = new StringBuilder();
+                for (Leaderboard.Entry entry : after.range(first - 1, last - first + 1)) {
+                    appendRow(sb, entry);
+                }
+                leaderboardArea.replaceRange(sb.toString(), start, end);
+            } catch (javax.swing.text.BadLocationException e) {
+                drawLeaderboard(leaderboardArea, after);
+                return;
+            }
+        }
+        leaderboardVersionShown = after.getVersion();
+    }
+
+    private void drawLeaderboard(JTextArea leaderboardArea, LeaderboardSnapshot board) {
+        List<Leaderboard.Entry> allUsers = board.entries(); // Already in leaderboard order
         StringBuilder sb = new StringBuilder();
         
         // Header
-        sb.append(String.format("%-5s %-20s %-10s %-15s%n", "Rank", "Name", "Points", "Badge"));
+        sb.append(String.format("%-5s %-20s %-10s %-15s\n", "Rank", "Name", "Points", "Badge"));
         sb.append("─".repeat(60)).append("\n");
         
         // User rows with ranking symbols
-        int rank = 1;
-        for (User u : allUsers) {
-            String rankSymbol = getRankSymbol(rank);
-            sb.append(String.format("%-5s %-20s %-10d %-15s%n",
-                rankSymbol + rank, 
-                u.getName().length() > 18 ? u.getName().substring(0, 18) + ".." : u.getName(),
-                u.getTotalPoints(), 
-                u.getBadgeName()
-            ));
-            rank++;
+        for (Leaderboard.Entry entry : allUsers) {
+            appendRow(sb, entry);
         }
         
         if (allUsers.isEmpty()) {
@@ -301,6 +342,19 @@ public class GamificationGUI {
         }
         
         leaderboardArea.setText(sb.toString());
+        leaderboardVersionShown = board.getVersion();
+    }
+
+    private void appendRow(StringBuilder sb, Leaderboard.Entry entry) {
+        User u = entry.getUser();
+        int rank = entry.getRank();
+        String rankSymbol = getRankSymbol(rank);
+        sb.append(String.format("%-5s %-20s %-10d %-15s\n",
+            rankSymbol + rank, 
+            u.getName().length() > 18 ? u.getName().substring(0, 18) + ".." : u.getName(),
+            entry.getPoints(), 
+            u.getBadgeName()
+        ));
     }
 
     private String getRankSymbol(int rank) {
@@ -315,18 +369,4 @@ public class GamificationGUI {
     public static void launchFromQuiz(User user, int correctAnswers) {
         SwingUtilities.invokeLater(() -> new GamificationGUI(user, correctAnswers));
     }
-
-    // Method for testing multiple users
-    public static void simulateMultipleUsers() {
-        SwingUtilities.invokeLater(() -> {
-            // Clear existing users for fresh simulation
-            allUsers.clear();
-            
-            // Create some sample users with different scores
-            new GamificationGUI(new User("Alice", 18), 9);
-            new GamificationGUI(new User("Bob", 12), 6);
-            new GamificationGUI(new User("Charlie", 8), 4);
-            new GamificationGUI(new User("Diana", 4), 2);
-        });
-    }
 }
\ No newline at end of file
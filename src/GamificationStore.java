@@ -0,0 +1,130 @@
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Saves and restores the state of a GamificationEngine (users, their points and
+ * badges) as a JSON file, so it survives a restart:
+ *
+ * <pre>
+ * {"version": 1,
+ *  "badges": [{"name": "Gold", "iconPath": "...", "requirementPoints": 15, "requirement": "..."}, ...],
+ *  "users": [{"name": "Aina", "points": 12, "badge": "Silver"}, ...]}
+ * </pre>
+ *
+ * The file is written and read with Gson's streaming JsonWriter and JsonReader and
+ * the reflection-free {@link UserTypeAdapter} and {@link BadgeTypeAdapter}, one user
+ * at a time. No tree of the whole document is ever built, so memory use while loading
+ * stays flat however many users the file holds.
+ *
+ * Only the all-time standings are saved. The daily, weekly and monthly leaderboards
+ * are kept by {@link EngineSnapshot}; an engine loaded from this file starts them
+ * empty.
+ */
+public class GamificationStore {
+    private static final int VERSION = 1;
+
+    private final File file;
+
+    public GamificationStore(String fileName) {
+        this.file = new File(fileName);
+    }
+
+    public boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Writes the engine's badges and users to the file. The JSON goes to a temporary
+     * file first and replaces the old one in a single rename, so a crash while saving
+     * leaves the previous state intact.
+     */
+    public void save(GamificationEngine engine) throws DataAccessException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        BadgeTypeAdapter badgeAdapter = new BadgeTypeAdapter();
+        UserTypeAdapter userAdapter = new UserTypeAdapter(engine::findBadge);
+        try (FileOutputStream stream = new FileOutputStream(tempFile);
+             JsonWriter out = new JsonWriter(new BufferedWriter(
+                     new OutputStreamWriter(stream, StandardCharsets.UTF_8)))) {
+            out.beginObject();
+            out.name("version").value(VERSION);
+            out.name("badges").beginArray();
+            for (Badge badge : engine.getAvailableBadges()) {
+                badgeAdapter.write(out, badge);
+            }
+            out.endArray();
+            out.name("users").beginArray();
+            for (User user : engine.getUsers()) {
+                userAdapter.write(out, user);
+            }
+            out.endArray();
+            out.endObject();
+            out.flush();
+            stream.getFD().sync();
+        } catch (IOException e) {
+            tempFile.delete();
+            throw new DataAccessException("Failed to save gamification state.", e);
+        }
+        try {
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            tempFile.delete();
+            throw new DataAccessException("Failed to save gamification state.", e);
+        }
+    }
+
+    /**
+     * Adds the users stored in the file to the engine and sorts its leaderboard.
+     * Badges are not taken from the file: once loaded, every user gets the badge
+     * their points earn under the engine's current tiers, which may have changed
+     * since the file was saved. Nothing happens if the file does not exist.
+     *
+     * @return the number of users loaded
+     */
+    public int load(GamificationEngine engine) throws DataAccessException {
+        if (!file.exists()) return 0;
+        UserTypeAdapter userAdapter = new UserTypeAdapter(engine::findBadge);
+        int loaded = 0;
+        try (JsonReader in = new JsonReader(new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)))) {
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "version":
+                        int version = in.nextInt();
+                        if (version != VERSION) {
+                            throw new DataAccessException("Unsupported gamification file version " + version);
+                        }
+                        break;
+                    case "users":
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            User user = userAdapter.read(in);
+                            if (user == null) continue;
+                            engine.addUser(user);
+                            loaded++;
+                        }
+                        in.endArray();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            if (in.peek() != JsonToken.END_DOCUMENT) {
+                throw new IOException("Unexpected content after gamification state");
+            }
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            throw new DataAccessException("Failed to load gamification state.", e);
+        }
+        engine.updateLeaderboard();
+        engine.assignBadges();
+        return loaded;
+    }
+}
@@ -0,0 +1,140 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Command line stress harness for GamificationEngine under many simultaneous
+ * quiz takers.
+ *
+ * Usage: java GamificationStressHarness [threads] [awards per thread] [users]
+ *
+ * Writer threads award points to random users from a shared pool, so the same user
+ * is often awarded by several threads at once, while reader threads keep asking
+ * for the top 10, ranks and neighbourhoods. Every writer counts what it awarded to
+ * each user. Afterwards the harness checks that:
+ * - every user's total equals the sum of what the writers awarded
+ * - every user holds the badge their final total earns
+ * - the leaderboard is in points order and agrees with getRank
+ * Exits with status 1 if any check fails.
+ */
+public class GamificationStressHarness {
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int awardsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        int userCount = args.length > 2 ? Integer.parseInt(args[2]) : 1_000;
+
+        GamificationEngine engine = new GamificationEngine();
+        List<User> users = new ArrayList<>(userCount);
+        for (int i = 0; i < userCount; i++) {
+            User user = new User("user" + i);
+            users.add(user);
+            engine.addUser(user);
+        }
+
+        long[][] awarded = new long[threads][userCount];
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch writersDone = new CountDownLatch(threads);
+        AtomicLong reads = new AtomicLong();
+        List<Throwable> failures = new ArrayList<>();
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            workers.add(new Thread(() -> {
+                Random random = new Random(id);
+                try {
+                    start.await();
+                    for (int i = 0; i < awardsPerThread; i++) {
+                        int u = random.nextInt(userCount);
+                        int correctAnswers = random.nextInt(11);
+                        engine.awardPointsToUser(users.get(u), correctAnswers);
+                        awarded[id][u] += correctAnswers * 2L;
+                    }
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                } finally {
+                    writersDone.countDown();
+                }
+            }, "stress-writer-" + t));
+        }
+        for (int t = 0; t < Math.max(1, threads / 2); t++) {
+            int id = t;
+            workers.add(new Thread(() -> {
+                Random random = new Random(1000 + id);
+                try {
+                    start.await();
+                    while (writersDone.getCount() > 0) {
+                        User user = users.get(random.nextInt(userCount));
+                        engine.getTopUsers(10);
+                        engine.getRank(user);
+                        engine.getUsersAround(user, 2);
+                        reads.addAndGet(3);
+                    }
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            }, "stress-reader-" + t));
+        }
+
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        long started = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        long awards = (long) threads * awardsPerThread;
+        System.out.printf("%,d awards on %d threads to %,d users, %,d concurrent reads, in %.2f s (%,.0f awards/sec)%n",
+                awards, threads, userCount, reads.get(), seconds, awards / seconds);
+
+        List<String> problems = new ArrayList<>();
+        for (Throwable failure : failures) {
+            problems.add("Thread failed: " + failure);
+        }
+        for (int u = 0; u < userCount; u++) {
+            long expected = 0;
+            for (int t = 0; t < threads; t++) {
+                expected += awarded[t][u];
+            }
+            User user = users.get(u);
+            if (user.getTotalPoints() != expected) {
+                problems.add(user.getName() + " has " + user.getTotalPoints() + " points, expected " + expected);
+            }
+            Badge earned = null;
+            for (Badge badge : engine.getAvailableBadges()) {
+                if (badge.checkRequirement(user.getTotalPoints())) {
+                    earned = badge;
+                    break;
+                }
+            }
+            if (user.getBadge() != earned) {
+                problems.add(user.getName() + " has badge " + user.getBadgeName() + " for " + user.getTotalPoints() + " points");
+            }
+        }
+        List<User> ranked = engine.getUsers();
+        for (int i = 0; i < ranked.size(); i++) {
+            if (i > 0 && ranked.get(i - 1).getTotalPoints() < ranked.get(i).getTotalPoints()) {
+                problems.add("Leaderboard out of order at rank " + (i + 1));
+            }
+            if (engine.getRank(ranked.get(i)) != i + 1) {
+                problems.add("getRank disagrees with the leaderboard at rank " + (i + 1));
+            }
+        }
+
+        if (problems.isEmpty()) {
+            System.out.println("PASS: point totals, badges and leaderboard order are exact");
+        } else {
+            System.out.println("FAIL: " + problems.size() + " problems");
+            problems.stream().limit(20).forEach(problem -> System.out.println("  " + problem));
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.stream.IntStream;
+
+/**
+ * Growable series of int scores backed by a primitive array, so storing and
+ * summing scores needs no boxed Integer per entry.
+ *
+ * The series only ever appends in place. {@link #snapshot()} therefore returns a
+ * read-only view that shares the backing array with the series instead of copying
+ * it: later appends write past the end of the snapshot, and operations that would
+ * change existing entries ({@link #clear()}, {@link #dropFirst(int)}) switch the
+ * series to a new array and leave the snapshot's array alone.
+ *
+ * A series is not thread safe; DataManager only changes it under its write lock.
+ * Snapshots never change and can be shared freely.
+ */
+public class IntSeries {
+    private static final int[] EMPTY = new int[0];
+
+    private int[] values;
+    private int size;
+    private final boolean readOnly;
+
+    /**
+     * Creates an empty series.
+     */
+    public IntSeries() {
+        this(EMPTY, 0, false);
+    }
+
+    /**
+     * Creates a series with room for the given number of scores before it has to grow.
+     */
+    public IntSeries(int initialCapacity) {
+        this(new int[initialCapacity], 0, false);
+    }
+
+    /**
+     * Creates a series holding the given scores.
+     */
+    public IntSeries(List<Integer> initial) {
+        this(new int[initial.size()], 0, false);
+        for (int value : initial) {
+            values[size++] = value;
+        }
+    }
+
+    private IntSeries(int[] values, int size, boolean readOnly) {
+        this.values = values;
+        this.size = size;
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Appends a score to the end of the series.
+     */
+    public void add(int value) {
+        checkWritable();
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(16, size + (size >> 1)));
+        }
+        values[size++] = value;
+    }
+
+    public int get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the most recent score, or 0 if the series is empty.
+     */
+    public int last() {
+        return size == 0 ? 0 : values[size - 1];
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the average score, or 0.0 if the series is empty.
+     */
+    public double mean() {
+        return size == 0 ? 0.0 : (double) sum() / size;
+    }
+
+    /**
+     * Removes every score.
+     */
+    public void clear() {
+        checkWritable();
+        values = EMPTY; // Snapshots may still be reading the old array
+        size = 0;
+    }
+
+    /**
+     * Removes the oldest {@code count} scores, e.g. after they were compacted away.
+     */
+    public void dropFirst(int count) {
+        checkWritable();
+        count = Math.min(count, size);
+        if (count <= 0) return;
+        values = Arrays.copyOfRange(values, count, Math.max(count + 16, size)); // Never shift in place
+        size -= count;
+    }
+
+    /**
+     * Returns a read-only view of the scores in the series right now,
+     * sharing the backing array instead of copying it.
+     */
+    public IntSeries snapshot() {
+        return new IntSeries(values, size, true);
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    public IntStream stream() {
+        return Arrays.stream(values, 0, size);
+    }
+
+    /**
+     * Returns a read-only List view of the series. No copy is made, and scores
+     * from 0 to 100 are boxed to cached Integer instances, so reading the view
+     * allocates nothing per entry either. Like a snapshot, the view keeps showing
+     * the scores as they were when it was created.
+     */
+    public List<Integer> asList() {
+        return new ListView(values, size);
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Score series snapshot is read-only");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return asList().toString();
+    }
+
+    private static class ListView extends AbstractList<Integer> implements RandomAccess {
+        private final int[] values;
+        private final int size;
+
+        ListView(int[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        @Override
+        public Integer get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+            }
+            return values[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,551 @@
+import java.util.*;
+
+/**
+ * Users ordered by total points, highest first, kept in an order-statistic tree.
+ *
+ * The tree is a treap: a binary search tree on (points descending, then the order
+ * users joined the board) that stays balanced through random node priorities. Each
+ * node also counts the nodes below it, so adding a user, moving one after an award,
+ * finding a user's rank and finding the user at a given rank all take O(log n),
+ * where re-sorting a list took O(n log n) per award.
+ *
+ * Users tied on points keep the order in which they joined the board.
+ *
+ * Slices of the board ({@link #topN(int)}, {@link #around(User, int)},
+ * {@link #page(int, int)}) cost O(log n + k) for k rows, so a screen showing the
+ * top ten and the current user never touches the rest of the users.
+ *
+ * Each node remembers the points its user had when it was last placed. After a
+ * user's points change, {@link #update(User)} moves the user to their new place;
+ * until then the board shows the old order.
+ *
+ * The trees are persistent: nodes are never changed once built, and a change copies
+ * only the O(log n) nodes on its path. {@link #snapshot()} therefore hands out a
+ * frozen, versioned view of the board in O(1), which any thread may read without
+ * locking while the board moves on. A second treap, keyed by user identity, finds
+ * a user's node in the board and in every snapshot.
+ *
+ * A leaderboard is not thread safe; its snapshots are.
+ */
+public class Leaderboard {
+    /**
+     * A user's place in the board. Immutable.
+     */
+    static final class Node {
+        final User user;
+        final long seq; // tie-breaker, earlier joiners rank higher
+        final int priority;
+        final int points;
+        final int size;
+        final Node left;
+        final Node right;
+
+        Node(User user, long seq, int priority, int points, Node left, Node right) {
+            this.user = user;
+            this.seq = seq;
+            this.priority = priority;
+            this.points = points;
+            this.left = left;
+            this.right = right;
+            this.size = 1 + size(left) + size(right);
+        }
+
+        Node with(Node left, Node right) {
+            return left == this.left && right == this.right ? this : new Node(user, seq, priority, points, left, right);
+        }
+    }
+
+    /**
+     * Where a user was placed, found by the user's identity hash. Immutable.
+     */
+    static final class Slot {
+        final User user;
+        final int hash;
+        final int priority;
+        final long seq;
+        final int points; // the points the user's Node was placed with
+        final Slot left;
+        final Slot right;
+
+        Slot(User user, int hash, int priority, long seq, int points, Slot left, Slot right) {
+            this.user = user;
+            this.hash = hash;
+            this.priority = priority;
+            this.seq = seq;
+            this.points = points;
+            this.left = left;
+            this.right = right;
+        }
+
+        Slot with(Slot left, Slot right) {
+            return left == this.left && right == this.right ? this : new Slot(user, hash, priority, seq, points, left, right);
+        }
+    }
+
+    /**
+     * One row of the board: a user, their place and the points they were placed with.
+     */
+    public static final class Entry {
+        private final int rank;
+        private final User user;
+        private final int points;
+
+        Entry(int rank, User user, int points) {
+            this.rank = rank;
+            this.user = user;
+            this.points = points;
+        }
+
+        /**
+         * Place on the board, 1 for the leader.
+         */
+        public int getRank() {
+            return rank;
+        }
+
+        public User getUser() {
+            return user;
+        }
+
+        public int getPoints() {
+            return points;
+        }
+
+        @Override
+        public String toString() {
+            return rank + ". " + user.getName() + " - " + points + " pts";
+        }
+    }
+
+    private final SplittableRandom random = new SplittableRandom();
+    private Node root;
+    private Slot slots;
+    private long nextSeq;
+    private long version;
+    private LeaderboardSnapshot snapshot; // of the current version, made on first request
+
+    /**
+     * Places a user on the board according to their current points.
+     *
+     * @return false if the user is already on the board
+     */
+    public boolean add(User user) {
+        return add(user, user.getTotalPoints());
+    }
+
+    /**
+     * Places a user on the board with the given points rather than their total,
+     * e.g. the points earned this week.
+     *
+     * @return false if the user is already on the board
+     */
+    public boolean add(User user, int points) {
+        if (find(slots, user) != null) return false;
+        long seq = nextSeq++;
+        root = insert(root, new Node(user, seq, random.nextInt(), points, null, null));
+        slots = insert(slots, new Slot(user, System.identityHashCode(user), random.nextInt(), seq, points, null, null));
+        changed();
+        return true;
+    }
+
+    /**
+     * Takes a user off the board.
+     *
+     * @return false if the user was not on the board
+     */
+    public boolean remove(User user) {
+        Slot slot = find(slots, user);
+        if (slot == null) return false;
+        root = delete(root, slot.points, slot.seq);
+        slots = delete(slots, slot);
+        changed();
+        return true;
+    }
+
+    /**
+     * Moves a user to the place their current points earn them.
+     *
+     * @return false if the user is not on the board
+     */
+    public boolean update(User user) {
+        return update(user, user.getTotalPoints());
+    }
+
+    /**
+     * Moves a user to the place the given points earn them.
+     *
+     * @return false if the user is not on the board
+     */
+    public boolean update(User user, int points) {
+        Slot slot = find(slots, user);
+        if (slot == null) return false;
+        if (points == slot.points) return true;
+        root = insert(delete(root, slot.points, slot.seq),
+                new Node(user, slot.seq, random.nextInt(), points, null, null));
+        slots = replace(slots, slot, points);
+        changed();
+        return true;
+    }
+
+    /**
+     * Moves every user whose total points changed since they were last placed.
+     * Costs one pass over the board plus O(log n) per user moved.
+     *
+     * @return the number of users moved
+     */
+    public int updateAll() {
+        List<User> moved = new ArrayList<>();
+        Deque<Slot> path = new ArrayDeque<>();
+        if (slots != null) path.push(slots);
+        while (!path.isEmpty()) {
+            Slot slot = path.pop();
+            if (slot.user.getTotalPoints() != slot.points) moved.add(slot.user);
+            if (slot.left != null) path.push(slot.left);
+            if (slot.right != null) path.push(slot.right);
+        }
+        for (User user : moved) {
+            update(user);
+        }
+        return moved.size();
+    }
+
+    public boolean contains(User user) {
+        return find(slots, user) != null;
+    }
+
+    /**
+     * Returns the points the user was last placed with, or -1 if the user is not on the board.
+     */
+    public int pointsOf(User user) {
+        Slot slot = find(slots, user);
+        return slot == null ? -1 : slot.points;
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    public void clear() {
+        root = null;
+        slots = null;
+        changed();
+    }
+
+    /**
+     * Starts a new version without moving anyone, e.g. after the users' badges
+     * changed, so readers comparing versions know to redraw.
+     */
+    public void touch() {
+        changed();
+    }
+
+    /**
+     * The current version; it grows with every change to the board.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns a frozen view of the board as it is now. O(1); asking again before the
+     * board changes returns the same snapshot.
+     */
+    public LeaderboardSnapshot snapshot() {
+        if (snapshot == null) {
+            snapshot = new LeaderboardSnapshot(version, root, slots);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the user's place on the board, 1 for the leader,
+     * or 0 if the user is not on the board.
+     */
+    public int rankOf(User user) {
+        return snapshot().rankOf(user);
+    }
+
+    /**
+     * Returns the user at the given position, 0 for the leader.
+     */
+    public User get(int index) {
+        return snapshot().get(index);
+    }
+
+    /**
+     * Returns the first {@code k} rows of the board, or all of them if there are fewer.
+     */
+    public List<Entry> topN(int k) {
+        return snapshot().topN(k);
+    }
+
+    /**
+     * Returns the user's row with up to {@code radius} rows above and below it,
+     * or an empty list if the user is not on the board.
+     */
+    public List<Entry> around(User user, int radius) {
+        return snapshot().around(user, radius);
+    }
+
+    /**
+     * Returns one page of the board; page 0 starts with the leader.
+     * A page past the end is empty.
+     */
+    public List<Entry> page(int page, int pageSize) {
+        return snapshot().page(page, pageSize);
+    }
+
+    /**
+     * Returns the number of pages of the given size needed for the whole board.
+     */
+    public int getPageCount(int pageSize) {
+        return snapshot().getPageCount(pageSize);
+    }
+
+    /**
+     * Returns up to {@code count} rows starting at position {@code from} (0 for the leader).
+     */
+    public List<Entry> range(int from, int count) {
+        return snapshot().range(from, count);
+    }
+
+    /**
+     * Returns a read-only List view of the board, leader first. The view follows
+     * later changes to the board; iterating it walks the tree in order, and
+     * {@code get(i)} costs O(log n).
+     */
+    public List<User> asList() {
+        return new AbstractList<User>() {
+            @Override
+            public User get(int index) {
+                return Leaderboard.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return Leaderboard.this.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof User && Leaderboard.this.contains((User) o);
+            }
+
+            @Override
+            public int indexOf(Object o) {
+                return o instanceof User ? rankOf((User) o) - 1 : -1;
+            }
+
+            @Override
+            public Iterator<User> iterator() {
+                return snapshot().asList().iterator();
+            }
+        };
+    }
+
+    private void changed() {
+        version++;
+        snapshot = null;
+    }
+
+    static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Whether a node with the given points and sequence number ranks above node b.
+     */
+    static boolean before(int points, long seq, Node b) {
+        return points != b.points ? points > b.points : seq < b.seq;
+    }
+
+    private static Node insert(Node tree, Node node) {
+        if (tree == null) return node;
+        if (node.priority > tree.priority) {
+            Node[] parts = new Node[2];
+            split(tree, node, parts);
+            return node.with(parts[0], parts[1]);
+        }
+        if (before(node.points, node.seq, tree)) {
+            return tree.with(insert(tree.left, node), tree.right);
+        }
+        return tree.with(tree.left, insert(tree.right, node));
+    }
+
+    /**
+     * Splits a tree into copies holding the nodes ranking above the key (parts[0])
+     * and below it (parts[1]).
+     */
+    private static void split(Node tree, Node key, Node[] parts) {
+        if (tree == null) {
+            parts[0] = null;
+            parts[1] = null;
+        } else if (before(tree.points, tree.seq, key)) {
+            split(tree.right, key, parts);
+            parts[0] = tree.with(tree.left, parts[0]);
+        } else {
+            split(tree.left, key, parts);
+            parts[1] = tree.with(parts[1], tree.right);
+        }
+    }
+
+    private static Node delete(Node tree, int points, long seq) {
+        if (tree.points == points && tree.seq == seq) {
+            return merge(tree.left, tree.right);
+        }
+        if (before(points, seq, tree)) {
+            return tree.with(delete(tree.left, points, seq), tree.right);
+        }
+        return tree.with(tree.left, delete(tree.right, points, seq));
+    }
+
+    /**
+     * Joins two trees where every node of {@code upper} ranks above every node of {@code lower}.
+     */
+    private static Node merge(Node upper, Node lower) {
+        if (upper == null) return lower;
+        if (lower == null) return upper;
+        if (upper.priority > lower.priority) {
+            return upper.with(upper.left, merge(upper.right, lower));
+        }
+        return lower.with(merge(upper, lower.left), lower.right);
+    }
+
+    /**
+     * Finds the user's slot; users whose identity hashes collide are told apart by identity.
+     */
+    static Slot find(Slot tree, User user) {
+        int hash = System.identityHashCode(user);
+        while (tree != null) {
+            if (hash < tree.hash) {
+                tree = tree.left;
+            } else if (hash > tree.hash) {
+                tree = tree.right;
+            } else if (tree.user == user) {
+                return tree;
+            } else {
+                Slot found = find(tree.left, user); // Colliding hashes sit on both sides
+                return found != null ? found : find(tree.right, user);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether slot a sorts before slot b: by identity hash, then by sequence number.
+     */
+    private static boolean slotBefore(Slot a, Slot b) {
+        return a.hash != b.hash ? a.hash < b.hash : a.seq < b.seq;
+    }
+
+    /**
+     * Adds to {@code out} every user who was added, removed or placed with different
+     * points between two versions of the slot tree.
+     *
+     * A treap's shape follows from its keys and priorities alone, and a change copies
+     * only its own path, so the two versions share every untouched subtree. Shared
+     * subtrees are skipped, where the roots hold the same user the walk goes on
+     * side by side, and only where a user was added or removed are the two subtrees
+     * listed and compared. Such a subtree holds O(log n) users on average, so the
+     * whole comparison costs about O(k log n) for k changed users.
+     */
+    static void diff(Slot older, Slot newer, List<User> out) {
+        if (older == newer) return;
+        if (older != null && newer != null && older.hash == newer.hash && older.seq == newer.seq) {
+            if (older.points != newer.points) out.add(newer.user);
+            diff(older.left, newer.left, out);
+            diff(older.right, newer.right, out);
+            return;
+        }
+        List<Slot> before = new ArrayList<>();
+        List<Slot> after = new ArrayList<>();
+        collect(older, before);
+        collect(newer, after);
+        int i = 0;
+        int j = 0;
+        while (i < before.size() || j < after.size()) {
+            Slot a = i < before.size() ? before.get(i) : null;
+            Slot b = j < after.size() ? after.get(j) : null;
+            if (b == null || (a != null && slotBefore(a, b))) {
+                out.add(a.user); // removed
+                i++;
+            } else if (a == null || slotBefore(b, a)) {
+                out.add(b.user); // added
+                j++;
+            } else {
+                if (a.points != b.points) out.add(b.user);
+                i++;
+                j++;
+            }
+        }
+    }
+
+    private static void collect(Slot tree, List<Slot> out) {
+        if (tree == null) return;
+        collect(tree.left, out);
+        out.add(tree);
+        collect(tree.right, out);
+    }
+
+    private static Slot insert(Slot tree, Slot slot) {
+        if (tree == null) return slot;
+        if (slot.priority > tree.priority) {
+            Slot[] parts = new Slot[2];
+            split(tree, slot, parts);
+            return slot.with(parts[0], parts[1]);
+        }
+        if (slotBefore(slot, tree)) {
+            return tree.with(insert(tree.left, slot), tree.right);
+        }
+        return tree.with(tree.left, insert(tree.right, slot));
+    }
+
+    private static void split(Slot tree, Slot key, Slot[] parts) {
+        if (tree == null) {
+            parts[0] = null;
+            parts[1] = null;
+        } else if (slotBefore(tree, key)) {
+            split(tree.right, key, parts);
+            parts[0] = tree.with(tree.left, parts[0]);
+        } else {
+            split(tree.left, key, parts);
+            parts[1] = tree.with(parts[1], tree.right);
+        }
+    }
+
+    private static Slot delete(Slot tree, Slot slot) {
+        if (tree == slot) {
+            return merge(tree.left, tree.right);
+        }
+        if (slotBefore(slot, tree)) {
+            return tree.with(delete(tree.left, slot), tree.right);
+        }
+        return tree.with(tree.left, delete(tree.right, slot));
+    }
+
+    private static Slot merge(Slot lower, Slot upper) {
+        if (lower == null) return upper;
+        if (upper == null) return lower;
+        if (lower.priority > upper.priority) {
+            return lower.with(lower.left, merge(lower.right, upper));
+        }
+        return upper.with(merge(lower, upper.left), upper.right);
+    }
+
+    /**
+     * Copies the path to a slot, giving the slot new points. Its key does not change.
+     */
+    private static Slot replace(Slot tree, Slot slot, int points) {
+        if (tree == slot) {
+            return new Slot(slot.user, slot.hash, slot.priority, slot.seq, points, slot.left, slot.right);
+        }
+        if (slotBefore(slot, tree)) {
+            return tree.with(replace(tree.left, slot, points), tree.right);
+        }
+        return tree.with(tree.left, replace(tree.right, slot, points));
+    }
+}
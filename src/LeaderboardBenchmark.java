@@ -0,0 +1,80 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Command line benchmark comparing the order-statistic Leaderboard with sorting a
+ * list of users after every award, as GamificationEngine used to do.
+ *
+ * Usage: java LeaderboardBenchmark [number of users]
+ *
+ * Both sides start from the same users with random points. Each award adds points
+ * to a random user and then updates the leaderboard; the list side re-sorts the
+ * whole list and finds the user's rank with a linear search, the tree side moves
+ * the one user and asks the tree for the rank. The list side runs far fewer awards
+ * because every one of them costs a full pass over the users.
+ */
+public class LeaderboardBenchmark {
+    private static final int TREE_AWARDS = 1_000_000;
+    private static final int SORT_AWARDS = 200;
+
+    private static long sink; // Keeps measured results reachable
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Random random = new Random(42);
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add(new User("user" + i, random.nextInt(10_000)));
+        }
+        System.out.printf("Leaderboard of %,d users%n%n", count);
+
+        long start = System.nanoTime();
+        Leaderboard leaderboard = new Leaderboard();
+        for (User user : users) {
+            leaderboard.add(user);
+        }
+        report("Build tree", System.nanoTime() - start, count);
+
+        List<User> sorted = new ArrayList<>(users);
+        start = System.nanoTime();
+        sorted.sort((u1, u2) -> u2.getTotalPoints() - u1.getTotalPoints());
+        report("Initial sort", System.nanoTime() - start, 1);
+        System.out.println();
+
+        System.out.println("Award points, then update leaderboard and look up rank");
+        start = System.nanoTime();
+        for (int i = 0; i < SORT_AWARDS; i++) {
+            User user = sorted.get(random.nextInt(count));
+            user.awardPoints(1 + random.nextInt(20));
+            sorted.sort((u1, u2) -> u2.getTotalPoints() - u1.getTotalPoints());
+            sink += sorted.indexOf(user);
+        }
+        report("  sort list", System.nanoTime() - start, SORT_AWARDS);
+        leaderboard.updateAll(); // Take over the points the list side awarded
+
+        start = System.nanoTime();
+        for (int i = 0; i < TREE_AWARDS; i++) {
+            User user = users.get(random.nextInt(count));
+            user.awardPoints(1 + random.nextInt(20));
+            leaderboard.update(user);
+            sink += leaderboard.rankOf(user);
+        }
+        report("  order-statistic tree", System.nanoTime() - start, TREE_AWARDS);
+        System.out.println();
+
+        System.out.println("User at rank, e.g. a page of the leaderboard");
+        start = System.nanoTime();
+        for (int i = 0; i < TREE_AWARDS; i++) {
+            sink += leaderboard.get(random.nextInt(count)).getTotalPoints();
+        }
+        report("  order-statistic tree", System.nanoTime() - start, TREE_AWARDS);
+
+        if (sink == 42) System.out.println(); // Never true, keeps the work from being optimised away
+    }
+
+    private static void report(String label, long nanos, int operations) {
+        System.out.printf("%-28s %,12.1f ms total %,12.3f us/op%n",
+                label, nanos / 1_000_000.0, nanos / 1_000.0 / operations);
+    }
+}
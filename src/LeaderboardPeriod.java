@@ -0,0 +1,65 @@
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * The calendar spans periodic leaderboards cover. Weeks start on Monday, as in ISO 8601.
+ */
+public enum LeaderboardPeriod {
+    DAILY("Today") {
+        @Override
+        public LocalDate start(LocalDate day) {
+            return day;
+        }
+
+        @Override
+        public LocalDate next(LocalDate start) {
+            return start.plusDays(1);
+        }
+    },
+    WEEKLY("This week") {
+        @Override
+        public LocalDate start(LocalDate day) {
+            return day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        }
+
+        @Override
+        public LocalDate next(LocalDate start) {
+            return start.plusWeeks(1);
+        }
+    },
+    MONTHLY("This month") {
+        @Override
+        public LocalDate start(LocalDate day) {
+            return day.withDayOfMonth(1);
+        }
+
+        @Override
+        public LocalDate next(LocalDate start) {
+            return start.plusMonths(1);
+        }
+    };
+
+    private final String label;
+
+    LeaderboardPeriod(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Returns the first day of the span that contains the given day.
+     */
+    public abstract LocalDate start(LocalDate day);
+
+    /**
+     * Returns the first day of the span after the one starting on the given day.
+     */
+    public abstract LocalDate next(LocalDate start);
+
+    /**
+     * A name for the current span, e.g. "This week".
+     */
+    public String getLabel() {
+        return label;
+    }
+}
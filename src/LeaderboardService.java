@@ -0,0 +1,310 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The one leaderboard the whole application shares.
+ *
+ * The service owns a single GamificationEngine and an AwardPipeline in front of
+ * it, so every window reads and awards through the same users and the same board.
+ * Windows no longer keep lists of their own.
+ *
+ * Views register a {@link Listener} and are told about every change to the board
+ * as a {@link Change}. A change carries only the rows that moved, plus the span of
+ * ranks that may show someone else now, so a view can redraw just those rows or
+ * nothing at all. Changes are worked out on the service's own thread by comparing
+ * consecutive leaderboard snapshots, which share every untouched part of the board;
+ * a burst of awards that lands while a change is being delivered arrives as one
+ * change. Views receive changes in version order, each one continuing where the
+ * previous one ended.
+ *
+ * The service thread also rotates the engine's daily, weekly and monthly
+ * leaderboards when their span ends, even if nobody is playing at the time.
+ * Views showing one of those register a {@link PeriodListener}, which is told
+ * whenever that board changed or rotated.
+ */
+public final class LeaderboardService implements AutoCloseable {
+    /**
+     * Told about every change to the board. Called on the service thread; views
+     * that update Swing components must hand over to the event thread.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void leaderboardChanged(Change change);
+    }
+
+    /**
+     * Told when a daily, weekly or monthly leaderboard changed, with its current
+     * standings. Called on the service thread, like {@link Listener}.
+     */
+    @FunctionalInterface
+    public interface PeriodListener {
+        void periodLeaderboardChanged(LeaderboardPeriod period, LeaderboardSnapshot current);
+    }
+
+    /**
+     * The difference between two versions of the board.
+     */
+    public static final class Change {
+        private final LeaderboardSnapshot previous;
+        private final LeaderboardSnapshot current;
+        private final List<Leaderboard.Entry> changedRows;
+        private final List<User> removedUsers;
+        private final int firstAffectedRank;
+        private final int lastAffectedRank;
+
+        Change(LeaderboardSnapshot previous, LeaderboardSnapshot current) {
+            this.previous = previous;
+            this.current = current;
+            List<User> changed = current.changedSince(previous);
+            List<Leaderboard.Entry> rows = new ArrayList<>();
+            List<User> removed = new ArrayList<>();
+            int first = Integer.MAX_VALUE;
+            int last = 0;
+            boolean sizeShift = false; // someone joined or left, so every rank below them moved
+            for (User user : changed) {
+                int before = previous.rankOf(user);
+                int after = current.rankOf(user);
+                if (after == 0) {
+                    removed.add(user);
+                } else {
+                    rows.add(new Leaderboard.Entry(after, user, current.pointsOf(user)));
+                }
+                if (before == 0 || after == 0) {
+                    sizeShift = true;
+                }
+                if (before > 0) {
+                    first = Math.min(first, before);
+                    last = Math.max(last, before);
+                }
+                if (after > 0) {
+                    first = Math.min(first, after);
+                    last = Math.max(last, after);
+                }
+            }
+            if (changed.isEmpty()) {
+                // Same places, new version: the badges changed, so every row may look different
+                first = 1;
+                last = Math.max(previous.size(), current.size());
+            } else if (sizeShift) {
+                last = Math.max(previous.size(), current.size());
+            }
+            rows.sort((a, b) -> a.getRank() - b.getRank());
+            this.changedRows = Collections.unmodifiableList(rows);
+            this.removedUsers = Collections.unmodifiableList(removed);
+            this.firstAffectedRank = first == Integer.MAX_VALUE ? 0 : first;
+            this.lastAffectedRank = last;
+        }
+
+        /**
+         * The board as the listener saw it last.
+         */
+        public LeaderboardSnapshot getPrevious() {
+            return previous;
+        }
+
+        /**
+         * The board as it is now.
+         */
+        public LeaderboardSnapshot getCurrent() {
+            return current;
+        }
+
+        /**
+         * The rows, in the current board, of users who joined or were placed with
+         * new points, in rank order.
+         */
+        public List<Leaderboard.Entry> getChangedRows() {
+            return changedRows;
+        }
+
+        /**
+         * Users no longer on the board.
+         */
+        public List<User> getRemovedUsers() {
+            return removedUsers;
+        }
+
+        /**
+         * The first rank that may show a different row than before, or 0 if none does.
+         */
+        public int getFirstAffectedRank() {
+            return firstAffectedRank;
+        }
+
+        /**
+         * The last rank that may show a different row than before, or 0 if none does.
+         * Ranks past the end of the board mean rows were dropped.
+         */
+        public int getLastAffectedRank() {
+            return lastAffectedRank;
+        }
+
+        /**
+         * Whether any of the ranks from {@code fromRank} to {@code toRank}, inclusive,
+         * may show a different row than before.
+         */
+        public boolean affects(int fromRank, int toRank) {
+            return firstAffectedRank > 0 && firstAffectedRank <= toRank && lastAffectedRank >= fromRank;
+        }
+
+        @Override
+        public String toString() {
+            return "Change " + previous.getVersion() + " -> " + current.getVersion() + ": "
+                    + changedRows.size() + " rows moved, " + removedUsers.size() + " removed, ranks "
+                    + firstAffectedRank + "-" + lastAffectedRank;
+        }
+    }
+
+    private static final class Holder {
+        static final LeaderboardService INSTANCE = new LeaderboardService(new GamificationEngine());
+    }
+
+    private final GamificationEngine engine;
+    private final AwardPipeline awardPipeline;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final List<PeriodListener> periodListeners = new CopyOnWriteArrayList<>();
+    private final Runnable wakeUp = this::wakeUp;
+    private final Thread dispatcher;
+    private LeaderboardSnapshot delivered; // the version listeners saw last, only used by the dispatcher
+    private final Map<LeaderboardPeriod, LeaderboardSnapshot> deliveredPeriods = new EnumMap<>(LeaderboardPeriod.class); // likewise
+    private boolean pending; // guarded by this
+    private volatile boolean running = true;
+
+    /**
+     * Creates a service for the given engine. The application uses
+     * {@link #getInstance()}; separate services are for headless tools.
+     */
+    public LeaderboardService(GamificationEngine engine) {
+        this.engine = engine;
+        this.awardPipeline = new AwardPipeline(engine);
+        this.delivered = engine.getLeaderboardSnapshot();
+        for (LeaderboardPeriod period : LeaderboardPeriod.values()) {
+            deliveredPeriods.put(period, engine.getPeriodLeaderboard(period));
+        }
+        engine.addPublishListener(wakeUp);
+        dispatcher = new Thread(this::dispatch, "leaderboard-service");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * The service shared by every window of the application.
+     */
+    public static LeaderboardService getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    public GamificationEngine getEngine() {
+        return engine;
+    }
+
+    public AwardPipeline getAwardPipeline() {
+        return awardPipeline;
+    }
+
+    /**
+     * The board as of the last change, read without locking.
+     */
+    public LeaderboardSnapshot getSnapshot() {
+        return engine.getLeaderboardSnapshot();
+    }
+
+    /**
+     * Awards the points for a finished quiz through the award pipeline; see
+     * {@link AwardPipeline#submit(User, int)}. Never blocks.
+     */
+    public void submit(User user, int correctAnswers) {
+        awardPipeline.submit(user, correctAnswers);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public void addPeriodListener(PeriodListener listener) {
+        periodListeners.add(listener);
+    }
+
+    public void removePeriodListener(PeriodListener listener) {
+        periodListeners.remove(listener);
+    }
+
+    /**
+     * Settles queued awards and stops the service thread, after it has delivered
+     * the last change. If the calling thread is interrupted while waiting, it stops
+     * waiting and keeps its interrupt status.
+     */
+    @Override
+    public void close() {
+        awardPipeline.close();
+        engine.removePublishListener(wakeUp);
+        running = false;
+        wakeUp();
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void wakeUp() {
+        pending = true;
+        notifyAll();
+    }
+
+    private void dispatch() {
+        while (true) {
+            boolean rotate = false;
+            synchronized (this) {
+                while (!pending && running) {
+                    long untilRotation = engine.millisUntilPeriodRotation();
+                    if (untilRotation == 0) {
+                        rotate = true;
+                        break;
+                    }
+                    try {
+                        wait(untilRotation);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                pending = false;
+            }
+            if (rotate) {
+                engine.rotatePeriods();
+            }
+            LeaderboardSnapshot current = engine.getLeaderboardSnapshot();
+            if (current.getVersion() != delivered.getVersion()) {
+                Change change = new Change(delivered, current);
+                delivered = current;
+                for (Listener listener : listeners) {
+                    try {
+                        listener.leaderboardChanged(change);
+                    } catch (RuntimeException e) {
+                        System.err.println("Leaderboard listener failed: " + e);
+                    }
+                }
+            }
+            for (LeaderboardPeriod period : LeaderboardPeriod.values()) {
+                LeaderboardSnapshot board = engine.getPeriodLeaderboard(period);
+                if (board == deliveredPeriods.put(period, board)) continue;
+                for (PeriodListener listener : periodListeners) {
+                    try {
+                        listener.periodLeaderboardChanged(period, board);
+                    } catch (RuntimeException e) {
+                        System.err.println("Leaderboard listener failed: " + e);
+                    }
+                }
+            }
+            if (!running) return;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+import java.util.*;
+
+/**
+ * A frozen view of a {@link Leaderboard} at one version.
+ *
+ * A snapshot shares the leaderboard's immutable tree nodes, so taking one costs
+ * O(1) and it never changes afterwards, however the board moves on. Any number of
+ * threads may read it at once without locking; the Swing event thread can render
+ * from it while awards are being settled.
+ *
+ * Versions only grow. A reader that remembers the version it last drew can skip
+ * redrawing when {@link #getVersion()} has not changed.
+ *
+ * Queries cost the same as on the board: O(log n) for a rank or a position, and
+ * O(log n + k) for k rows.
+ */
+public final class LeaderboardSnapshot {
+    private static final LeaderboardSnapshot EMPTY = new LeaderboardSnapshot(0, null, null);
+
+    private final long version;
+    private final Leaderboard.Node root;
+    private final Leaderboard.Slot slots;
+
+    LeaderboardSnapshot(long version, Leaderboard.Node root, Leaderboard.Slot slots) {
+        this.version = version;
+        this.root = root;
+        this.slots = slots;
+    }
+
+    /**
+     * A snapshot of an empty board, at version 0.
+     */
+    public static LeaderboardSnapshot empty() {
+        return EMPTY;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return Leaderboard.size(root);
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    public boolean contains(User user) {
+        return Leaderboard.find(slots, user) != null;
+    }
+
+    /**
+     * Returns the users who were added, removed or moved between an older snapshot
+     * of the same board and this one. Untouched parts of the board are shared by
+     * both snapshots and skipped, so this costs about O(k log n) for k changed users
+     * rather than a pass over the whole board.
+     */
+    public List<User> changedSince(LeaderboardSnapshot older) {
+        List<User> changed = new ArrayList<>();
+        Leaderboard.diff(older.slots, slots, changed);
+        return changed;
+    }
+
+    /**
+     * Returns the user's place on the board, 1 for the leader,
+     * or 0 if the user was not on the board at this version.
+     */
+    public int rankOf(User user) {
+        Leaderboard.Slot slot = Leaderboard.find(slots, user);
+        if (slot == null) return 0;
+        int rank = 0;
+        Leaderboard.Node current = root;
+        while (current != null) {
+            if (current.seq == slot.seq) {
+                return rank + Leaderboard.size(current.left) + 1;
+            }
+            if (Leaderboard.before(slot.points, slot.seq, current)) {
+                current = current.left;
+            } else {
+                rank += Leaderboard.size(current.left) + 1;
+                current = current.right;
+            }
+        }
+        throw new IllegalStateException("Leaderboard node not found for " + user.getName());
+    }
+
+    /**
+     * Returns the points the user was placed with at this version, or -1 if the user
+     * was not on the board.
+     */
+    public int pointsOf(User user) {
+        Leaderboard.Slot slot = Leaderboard.find(slots, user);
+        return slot == null ? -1 : slot.points;
+    }
+
+    /**
+     * Returns the user at the given position, 0 for the leader.
+     */
+    public User get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+        }
+        Leaderboard.Node current = root;
+        while (true) {
+            int leftSize = Leaderboard.size(current.left);
+            if (index < leftSize) {
+                current = current.left;
+            } else if (index == leftSize) {
+                return current.user;
+            } else {
+                index -= leftSize + 1;
+                current = current.right;
+            }
+        }
+    }
+
+    /**
+     * Returns the first {@code k} rows of the board, or all of them if there are fewer.
+     */
+    public List<Leaderboard.Entry> topN(int k) {
+        return range(0, k);
+    }
+
+    /**
+     * Returns the user's row with up to {@code radius} rows above and below it,
+     * or an empty list if the user is not on the board.
+     */
+    public List<Leaderboard.Entry> around(User user, int radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("Radius must not be negative");
+        }
+        int rank = rankOf(user);
+        if (rank == 0) return new ArrayList<>();
+        int from = Math.max(0, rank - 1 - radius);
+        return range(from, rank + radius - from);
+    }
+
+    /**
+     * Returns one page of the board; page 0 starts with the leader.
+     * A page past the end is empty.
+     */
+    public List<Leaderboard.Entry> page(int page, int pageSize) {
+        if (page < 0 || pageSize <= 0) {
+            throw new IllegalArgumentException("Page must not be negative and page size must be positive");
+        }
+        long from = (long) page * pageSize;
+        if (from >= size()) return new ArrayList<>();
+        return range((int) from, pageSize);
+    }
+
+    /**
+     * Returns the number of pages of the given size needed for the whole board.
+     */
+    public int getPageCount(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        return (size() + pageSize - 1) / pageSize;
+    }
+
+    /**
+     * Returns up to {@code count} rows starting at position {@code from} (0 for the leader).
+     * Finds the first row in O(log n), then walks the tree in order from there.
+     */
+    public List<Leaderboard.Entry> range(int from, int count) {
+        if (from < 0 || count < 0) {
+            throw new IllegalArgumentException("Range must not be negative");
+        }
+        int to = (int) Math.min(size(), (long) from + count);
+        List<Leaderboard.Entry> rows = new ArrayList<>(Math.max(0, to - from));
+        if (from >= to) return rows;
+
+        // Path to the first row, holding only the nodes that come after it
+        Deque<Leaderboard.Node> path = new ArrayDeque<>();
+        Leaderboard.Node current = root;
+        int index = from;
+        while (true) {
+            int leftSize = Leaderboard.size(current.left);
+            if (index < leftSize) {
+                path.push(current);
+                current = current.left;
+            } else if (index == leftSize) {
+                path.push(current);
+                break;
+            } else {
+                index -= leftSize + 1;
+                current = current.right;
+            }
+        }
+        for (int rank = from + 1; rank <= to; rank++) {
+            Leaderboard.Node node = path.pop();
+            rows.add(new Leaderboard.Entry(rank, node.user, node.points));
+            for (Leaderboard.Node next = node.right; next != null; next = next.left) {
+                path.push(next);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Returns every row of the board, leader first.
+     */
+    public List<Leaderboard.Entry> entries() {
+        return range(0, size());
+    }
+
+    /**
+     * Returns a read-only List view of the users, leader first. Iterating it walks
+     * the tree in order, and {@code get(i)} costs O(log n).
+     */
+    public List<User> asList() {
+        return new AbstractList<User>() {
+            @Override
+            public User get(int index) {
+                return LeaderboardSnapshot.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return LeaderboardSnapshot.this.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof User && LeaderboardSnapshot.this.contains((User) o);
+            }
+
+            @Override
+            public int indexOf(Object o) {
+                return o instanceof User ? rankOf((User) o) - 1 : -1;
+            }
+
+            @Override
+            public Iterator<User> iterator() {
+                return new Iterator<User>() {
+                    private final Deque<Leaderboard.Node> path = new ArrayDeque<>();
+                    {
+                        descend(root);
+                    }
+
+                    private void descend(Leaderboard.Node node) {
+                        for (; node != null; node = node.left) {
+                            path.push(node);
+                        }
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return !path.isEmpty();
+                    }
+
+                    @Override
+                    public User next() {
+                        if (path.isEmpty()) throw new NoSuchElementException();
+                        Leaderboard.Node node = path.pop();
+                        descend(node.right);
+                        return node.user;
+                    }
+                };
+            }
+        };
+    }
+}
@@ -0,0 +1,419 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Headless capacity simulator: many synthetic users taking quizzes against one
+ * GamificationEngine, with no windows.
+ *
+ * Usage: java LoadSimulator [option=value ...]
+ *
+ *   users=1000000     synthetic users taking part
+ *   quizzes=1000000   quizzes finished in total
+ *   threads=4         threads finishing quizzes
+ *   readers=1         threads reading the leaderboard meanwhile, as open windows do
+ *   scores=uniform    correct answers per quiz: uniform, normal, bimodal or skewed
+ *   rate=0            quizzes finished per second over all threads, 0 for as fast as possible
+ *   arrivals=steady   with a rate: steady spacing, or poisson for random bursts
+ *   mode=direct       direct awards through QuizModule, or pipeline through a LeaderboardService
+ *   seed=42
+ *
+ * Every quiz picks a random user, looks them up by name as a login does (the first
+ * quiz of a user registers them), grades a ten-question quiz with QuizModule and
+ * awards the result. Latency is measured per quiz from the moment it was due to
+ * finish, so with a rate set, time spent waiting behind a slow quiz counts too.
+ * In pipeline mode the measured part ends when the award is queued; how long
+ * queued awards waited to be settled is reported from the pipeline's metrics.
+ *
+ * Afterwards the simulator reports throughput, latency percentiles and heap
+ * usage, including the retained heap per registered user.
+ */
+public class LoadSimulator {
+    private static final int QUESTIONS = 10;
+    private static final int POINTS_PER_QUESTION = 10;
+
+    /**
+     * How many answers of a quiz are correct.
+     */
+    enum ScoreDistribution {
+        /** Every result from 0 to 10 equally likely. */
+        UNIFORM {
+            @Override
+            int correctAnswers(Random random) {
+                return random.nextInt(QUESTIONS + 1);
+            }
+        },
+        /** Most results around 6 of 10. */
+        NORMAL {
+            @Override
+            int correctAnswers(Random random) {
+                return clamp(Math.round(6 + 2 * random.nextGaussian()));
+            }
+        },
+        /** A group that struggles around 3 of 10 and a group that does well around 8. */
+        BIMODAL {
+            @Override
+            int correctAnswers(Random random) {
+                double mean = random.nextInt(5) < 2 ? 3 : 8;
+                return clamp(Math.round(mean + 1.2 * random.nextGaussian()));
+            }
+        },
+        /** Mostly low results with a long tail of high ones. */
+        SKEWED {
+            @Override
+            int correctAnswers(Random random) {
+                return clamp((long) (-2.5 * Math.log(1 - random.nextDouble())));
+            }
+        };
+
+        abstract int correctAnswers(Random random);
+
+        static int clamp(long correct) {
+            return (int) Math.max(0, Math.min(QUESTIONS, correct));
+        }
+    }
+
+    /**
+     * Latencies in nanoseconds, counted in buckets of about 3% width, so millions
+     * of quizzes cost a fixed couple of kilobytes per thread.
+     */
+    static final class LatencyHistogram {
+        private static final int SUB_BITS = 5;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+        private final long[] counts = new long[(64 - SUB_BITS + 1) * SUB_BUCKETS];
+        private long count;
+        private long max;
+
+        void record(long nanos) {
+            long value = Math.max(0, nanos);
+            counts[index(value)]++;
+            count++;
+            max = Math.max(max, value);
+        }
+
+        void add(LatencyHistogram other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            count += other.count;
+            max = Math.max(max, other.max);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        long getMax() {
+            return max;
+        }
+
+        /**
+         * The smallest latency that at least the given fraction of quizzes stayed
+         * within, rounded up to the end of its bucket.
+         */
+        long percentile(double fraction) {
+            long wanted = Math.max(1, (long) Math.ceil(fraction * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= wanted) {
+                    return Math.min(max, upperBound(i));
+                }
+            }
+            return max;
+        }
+
+        private static int index(long value) {
+            if (value < SUB_BUCKETS) return (int) value;
+            int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS + 1;
+            return magnitude * SUB_BUCKETS + (int) ((value >>> (magnitude - 1)) & (SUB_BUCKETS - 1));
+        }
+
+        private static long upperBound(int index) {
+            if (index < SUB_BUCKETS) return index;
+            int magnitude = index / SUB_BUCKETS;
+            long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (magnitude - 1);
+            return lower + (1L << (magnitude - 1)) - 1;
+        }
+    }
+
+    private final int userCount;
+    private final long quizzes;
+    private final int threads;
+    private final int readers;
+    private final ScoreDistribution scores;
+    private final double rate;
+    private final boolean poisson;
+    private final boolean pipeline;
+    private final long seed;
+
+    LoadSimulator(int userCount, long quizzes, int threads, int readers, ScoreDistribution scores,
+                  double rate, boolean poisson, boolean pipeline, long seed) {
+        if (userCount < 1 || quizzes < 0 || threads < 1 || readers < 0 || rate < 0) {
+            throw new IllegalArgumentException("Counts must be positive and the rate must not be negative");
+        }
+        this.userCount = userCount;
+        this.quizzes = quizzes;
+        this.threads = threads;
+        this.readers = readers;
+        this.scores = scores;
+        this.rate = rate;
+        this.poisson = poisson;
+        this.pipeline = pipeline;
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        LoadSimulator simulator;
+        try {
+            simulator = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: java LoadSimulator [users=N] [quizzes=N] [threads=N] [readers=N]"
+                    + " [scores=uniform|normal|bimodal|skewed] [rate=quizzes per second]"
+                    + " [arrivals=steady|poisson] [mode=direct|pipeline] [seed=N]");
+            System.exit(2);
+            return;
+        }
+        simulator.run();
+    }
+
+    static LoadSimulator parse(String[] args) {
+        int users = 1_000_000;
+        long quizzes = 1_000_000;
+        int threads = 4;
+        int readers = 1;
+        ScoreDistribution scores = ScoreDistribution.UNIFORM;
+        double rate = 0;
+        boolean poisson = false;
+        boolean pipeline = false;
+        long seed = 42;
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Expected option=value: " + arg);
+            }
+            String name = arg.substring(0, eq);
+            String value = arg.substring(eq + 1).replace("_", "");
+            try {
+                switch (name) {
+                    case "users": users = Integer.parseInt(value); break;
+                    case "quizzes": quizzes = Long.parseLong(value); break;
+                    case "threads": threads = Integer.parseInt(value); break;
+                    case "readers": readers = Integer.parseInt(value); break;
+                    case "scores": scores = ScoreDistribution.valueOf(value.toUpperCase(Locale.ROOT)); break;
+                    case "rate": rate = Double.parseDouble(value); break;
+                    case "arrivals": poisson = choose(arg, value, "steady", "poisson"); break;
+                    case "mode": pipeline = choose(arg, value, "direct", "pipeline"); break;
+                    case "seed": seed = Long.parseLong(value); break;
+                    default: throw new IllegalArgumentException("Unknown option: " + name);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a number: " + arg);
+            }
+        }
+        return new LoadSimulator(users, quizzes, threads, readers, scores, rate, poisson, pipeline, seed);
+    }
+
+    private static boolean choose(String arg, String value, String no, String yes) {
+        if (value.equals(no)) return false;
+        if (value.equals(yes)) return true;
+        throw new IllegalArgumentException("Expected " + no + " or " + yes + ": " + arg);
+    }
+
+    void run() throws InterruptedException {
+        System.out.printf("%,d quizzes by %,d users on %d threads, %s scores, %s, %s mode, %d readers%n",
+                quizzes, userCount, threads, scores.name().toLowerCase(Locale.ROOT),
+                rate > 0 ? String.format("%,.0f quizzes/sec %s", rate, poisson ? "poisson" : "steady") : "unthrottled",
+                pipeline ? "pipeline" : "direct", readers);
+
+        long heapBefore = usedHeapAfterGc();
+        resetPeakHeap();
+
+        GamificationEngine engine = new GamificationEngine();
+        LeaderboardService service = pipeline ? new LeaderboardService(engine) : null;
+        LatencyHistogram[] latencies = new LatencyHistogram[threads];
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch writersDone = new CountDownLatch(threads);
+        AtomicLong reads = new AtomicLong();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> workers = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            long share = quizzes / threads + (t < quizzes % threads ? 1 : 0);
+            latencies[t] = new LatencyHistogram();
+            workers.add(new Thread(() -> {
+                try {
+                    start.await();
+                    takeQuizzes(engine, service, share, new Random(seed + id), latencies[id]);
+                } catch (Throwable e) {
+                    failures.add(e);
+                } finally {
+                    writersDone.countDown();
+                }
+            }, "simulated-quizzes-" + t));
+        }
+        for (int t = 0; t < readers; t++) {
+            int id = t;
+            workers.add(new Thread(() -> {
+                Random random = new Random(seed + 1000 + id);
+                try {
+                    start.await();
+                    while (writersDone.getCount() > 0) {
+                        LeaderboardSnapshot board = engine.getLeaderboardSnapshot();
+                        board.topN(10);
+                        if (!board.isEmpty()) {
+                            board.around(board.get(random.nextInt(board.size())), 2);
+                        }
+                        reads.addAndGet(2);
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }, "simulated-reader-" + t));
+        }
+
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        long started = System.nanoTime();
+        start.countDown();
+        writersDone.await();
+        long finishing = System.nanoTime();
+        if (service != null) {
+            service.getAwardPipeline().flush(60_000);
+        }
+        long settled = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        LatencyHistogram all = new LatencyHistogram();
+        for (LatencyHistogram latency : latencies) {
+            all.add(latency);
+        }
+        double seconds = (finishing - started) / 1e9;
+        System.out.println();
+        System.out.printf("Throughput  %,.0f quizzes/sec (%,d quizzes in %.2f s)%n", all.getCount() / seconds, all.getCount(), seconds);
+        if (readers > 0) {
+            System.out.printf("Reads       %,.0f leaderboard reads/sec%n", reads.get() / seconds);
+        }
+        System.out.printf("Latency     p50 %s  p90 %s  p99 %s  p99.9 %s  max %s%n",
+                micros(all.percentile(0.50)), micros(all.percentile(0.90)), micros(all.percentile(0.99)),
+                micros(all.percentile(0.999)), micros(all.getMax()));
+        if (service != null) {
+            AwardPipeline.Metrics metrics = service.getAwardPipeline().getMetrics();
+            System.out.printf("Pipeline    settled %.2f s after the last quiz; %s%n", (settled - finishing) / 1e9, metrics);
+            service.close();
+        }
+
+        long peak = peakHeap();
+        int registered = engine.getUserCount();
+        long heapAfter = usedHeapAfterGc();
+        System.out.printf("Users       %,d registered, %,d on the leaderboard%n", registered, engine.getLeaderboardSnapshot().size());
+        System.out.printf("Heap        peak %s, retained %s (%,d bytes per user), max %s%n",
+                megabytes(peak), megabytes(heapAfter - heapBefore),
+                registered == 0 ? 0 : (heapAfter - heapBefore) / registered, megabytes(Runtime.getRuntime().maxMemory()));
+
+        if (!failures.isEmpty()) {
+            System.out.println("FAIL: " + failures.size() + " threads failed");
+            failures.stream().limit(5).forEach(failure -> System.out.println("  " + failure));
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Finishes this thread's share of the quizzes, each one due at its arrival
+     * time when a rate is set.
+     */
+    private void takeQuizzes(GamificationEngine engine, LeaderboardService service, long count,
+                             Random random, LatencyHistogram latency) {
+        QuizModule quiz = new QuizModule(engine);
+        for (int q = 0; q < QUESTIONS; q++) {
+            quiz.addQuestion(new TrueFalseQuestion("Simulated question " + (q + 1), POINTS_PER_QUESTION, true));
+        }
+        // Answer sheets with the first k answers right, one per possible result
+        List<List<String>> sheets = new ArrayList<>(QUESTIONS + 1);
+        for (int k = 0; k <= QUESTIONS; k++) {
+            String[] answers = new String[QUESTIONS];
+            Arrays.fill(answers, 0, k, "true");
+            Arrays.fill(answers, k, QUESTIONS, "false");
+            sheets.add(Arrays.asList(answers));
+        }
+
+        double interval = rate > 0 ? threads * 1e9 / rate : 0; // this thread's mean gap between quizzes
+        long next = System.nanoTime();
+        for (long i = 0; i < count; i++) {
+            long due;
+            if (interval > 0) {
+                next += (long) (poisson ? -interval * Math.log(1 - random.nextDouble()) : interval);
+                due = next;
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            } else {
+                due = System.nanoTime();
+            }
+
+            User user = engine.getOrCreateUser("player" + random.nextInt(userCount));
+            int score = quiz.evaluateAnswers(sheets.get(scores.correctAnswers(random)));
+            int correctAnswers = score / POINTS_PER_QUESTION;
+            if (service != null) {
+                service.submit(user, correctAnswers);
+            } else {
+                quiz.awardScoreToUser(user, correctAnswers);
+            }
+            latency.record(System.nanoTime() - due);
+        }
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * The sum of each heap pool's peak, which may overstate the true peak a little
+     * since the pools need not peak at the same moment.
+     */
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%,.1f us", nanos / 1e3);
+    }
+
+    private static String megabytes(long bytes) {
+        return String.format("%,.0f MB", bytes / (1024.0 * 1024.0));
+    }
+}
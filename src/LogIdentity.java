@@ -0,0 +1,132 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.zip.CRC32;
+
+/**
+ * Tells whether a score log is still the file a cached summary was built from.
+ *
+ * A summary covers the first bytes of one particular file. Comparing lengths alone
+ * misses a log that was replaced by another one of the same or greater length, e.g.
+ * restored from a backup or copied over from another kiosk. The identity is the
+ * file key the file system gives the file (device and inode on Unix; some file
+ * systems have none) together with a CRC32 of the first {@value #HEAD_BYTES} bytes
+ * of the log, which never change once written.
+ *
+ * While the log is shorter than that, the identity covers only what there is;
+ * {@link #extendedTo} widens it as the log grows.
+ */
+public class LogIdentity {
+    static final int HEAD_BYTES = 4096;
+
+    private final String fileKey; // empty if the file system has none
+    private final Object key; // the file key itself, null when decoded or absent; compares without formatting it
+    private final int headLength;
+    private final long headCrc;
+
+    private LogIdentity(String fileKey, Object key, int headLength, long headCrc) {
+        this.fileKey = fileKey;
+        this.key = key;
+        this.headLength = headLength;
+        this.headCrc = headCrc;
+    }
+
+    /**
+     * Identifies the file as it is now, from its first bytes up to {@code covered}.
+     */
+    public static LogIdentity of(File file, long covered) throws IOException {
+        BasicFileAttributes attributes = attributesOf(file);
+        int length = (int) Math.min(HEAD_BYTES, Math.min(covered, attributes == null ? 0 : attributes.size()));
+        return new LogIdentity(keyOf(attributes), attributes == null ? null : attributes.fileKey(),
+                length, crcOfHead(file, length));
+    }
+
+    /**
+     * Returns the file's attributes, or null if it does not exist.
+     */
+    public static BasicFileAttributes attributesOf(File file) throws IOException {
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the file key of the given attributes as text, or "" if there is none.
+     */
+    public static String keyOf(BasicFileAttributes attributes) {
+        Object key = attributes == null ? null : attributes.fileKey();
+        return key == null ? "" : key.toString();
+    }
+
+    /**
+     * Returns false if the file key shows that the file with the given attributes
+     * (null if it does not exist) is another one. Without a file key on either side,
+     * only {@link #headMatches} can tell.
+     */
+    public boolean isSameFile(BasicFileAttributes attributes) {
+        Object other = attributes == null ? null : attributes.fileKey();
+        if (key != null && other != null) return key.equals(other);
+        return fileKey.isEmpty() || other == null || fileKey.equals(other.toString());
+    }
+
+    /**
+     * Returns whether the file still starts with the bytes this identity was taken of.
+     */
+    public boolean headMatches(File file) throws IOException {
+        if (headLength == 0) return true;
+        if (file.length() < headLength) return false;
+        return crcOfHead(file, headLength) == headCrc;
+    }
+
+    /**
+     * Returns an identity covering more of the head, now that {@code covered} bytes of
+     * the same file are known, or this one if it already covers all it can.
+     */
+    public LogIdentity extendedTo(File file, long covered) throws IOException {
+        if (headLength >= HEAD_BYTES || covered <= headLength || !headMatches(file)) return this;
+        LogIdentity extended = of(file, covered);
+        return fileKey.isEmpty() || extended.fileKey.equals(fileKey) ? extended : this;
+    }
+
+    private static long crcOfHead(File file, int length) throws IOException {
+        CRC32 crc = new CRC32();
+        if (length > 0) {
+            byte[] head = new byte[length];
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                raf.readFully(head);
+            }
+            crc.update(head);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Text form for the summary sidecar: file key, head length and head CRC.
+     */
+    public String encode() {
+        return fileKey + "/" + headLength + "/" + Long.toHexString(headCrc);
+    }
+
+    /**
+     * Parses {@link #encode()}, returning null for missing or malformed text.
+     */
+    public static LogIdentity decode(String text) {
+        if (text == null) return null;
+        int crcAt = text.lastIndexOf('/');
+        int lengthAt = crcAt <= 0 ? -1 : text.lastIndexOf('/', crcAt - 1);
+        if (lengthAt < 0) return null;
+        try {
+            int headLength = Integer.parseInt(text.substring(lengthAt + 1, crcAt));
+            long headCrc = Long.parseLong(text.substring(crcAt + 1), 16);
+            if (headLength < 0 || headLength > HEAD_BYTES) return null;
+            return new LogIdentity(text.substring(0, lengthAt), null, headLength, headCrc);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
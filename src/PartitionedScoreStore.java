@@ -0,0 +1,669 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Score storage partitioned by user, for installations with many users.
+ *
+ * Every user gets a numeric id, kept in {@code users.idx} in the store directory.
+ * Users are matched by {@link GamificationEngine#normalizeName(String)}, as in the
+ * engine, so "Alice" and " alice " share one partition under the name first seen.
+ * Scores are appended as fixed-width binary records (user id, score, timestamp) to
+ * one of a fixed number of shard files, chosen by hashing the user id, so no single
+ * file holds everybody's history and no file per user is needed either.
+ *
+ * On open each shard is scanned once to build an in-memory index: for every user
+ * the positions of their records within their shard, plus their count, sum, lowest,
+ * highest and latest score. {@link #getUserScores(String)} then reads only that
+ * user's records, and aggregates across all users come from running totals
+ * instead of a scan.
+ *
+ * A shard may grow past 2GB: like BinaryScoreLog, it is mapped in chunks of
+ * {@link #CHUNK_RECORDS} records. Record numbers within a shard are kept in 32
+ * bits, so a shard holds at most {@link #MAX_SHARD_RECORDS} records.
+ *
+ * All methods are synchronized; one store instance should own the directory.
+ */
+public class PartitionedScoreStore implements Closeable {
+    private static final int MAGIC = 0x4D485150; // "MHQP"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_SIZE = 16;
+    public static final int DEFAULT_SHARDS = 16;
+    // 2^26 records of 16 bytes make 1GB chunks; no record ever spans two of them
+    static final int CHUNK_SHIFT = 26;
+    static final long CHUNK_RECORDS = 1L << CHUNK_SHIFT;
+    static final long MAX_SHARD_RECORDS = 0xffffffffL;
+
+    private final File directory;
+    private final Shard[] shards;
+    private final Map<String, Partition> byName = new HashMap<>(); // by normalized name
+    private final List<Partition> byId = new ArrayList<>();
+    private int userCount;
+    private final ScoreSummary totals = new ScoreSummary();
+    private Writer userIndex;
+
+    /**
+     * Index entry and running aggregates for one user.
+     * Ids of older index entries that normalize to the same name share the partition,
+     * so its records can come from more than one shard.
+     */
+    private static class Partition {
+        final int id;
+        final String name;
+        final boolean named; // false for a placeholder whose id line was lost
+        long[] records = new long[4]; // shard index << 32 | record number within the shard
+        boolean merged;
+        int count;
+        long sum;
+        int min;
+        int max;
+        int last;
+
+        Partition(int id, String name, boolean named) {
+            this.id = id;
+            this.name = name;
+            this.named = named;
+        }
+
+        void add(int shard, long record, int score) {
+            if (count == records.length) {
+                records = Arrays.copyOf(records, count * 2);
+            }
+            records[count] = (long) shard << 32 | record;
+            if (count == 0) {
+                min = score;
+                max = score;
+            } else {
+                min = Math.min(min, score);
+                max = Math.max(max, score);
+            }
+            count++;
+            sum += score;
+            last = score;
+        }
+    }
+
+    /**
+     * One shard file, read through mappings of {@link #CHUNK_RECORDS} records each.
+     * Only the chunks that records were appended to are mapped again.
+     */
+    private static class Shard {
+        final File file;
+        final FileChannel channel;
+        final ByteBuffer writeBuffer = ByteBuffer.allocate(RECORD_SIZE);
+        MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+        long mappedCount;
+        long recordCount;
+
+        Shard(File file) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        ByteBuffer[] records() throws IOException {
+            if (mappedCount != recordCount) {
+                int count = (int) ((recordCount + CHUNK_RECORDS - 1) >>> CHUNK_SHIFT);
+                MappedByteBuffer[] remapped = Arrays.copyOf(chunks, count);
+                for (int c = (int) (mappedCount >>> CHUNK_SHIFT); c < count; c++) {
+                    long first = (long) c << CHUNK_SHIFT;
+                    long records = Math.min(CHUNK_RECORDS, recordCount - first);
+                    remapped[c] = channel.map(FileChannel.MapMode.READ_ONLY,
+                            HEADER_SIZE + first * RECORD_SIZE, records * RECORD_SIZE);
+                }
+                chunks = remapped;
+                mappedCount = recordCount;
+            }
+            return chunks;
+        }
+
+        /**
+         * Fails if {@code more} records would not fit in the shard.
+         */
+        void checkRoom(long more) throws DataAccessException {
+            if (recordCount + more > MAX_SHARD_RECORDS) {
+                throw new DataAccessException("Score shard is full: " + file.getName());
+            }
+        }
+    }
+
+    /**
+     * Opens the store in the given directory with the default number of shards,
+     * creating it if needed.
+     */
+    public PartitionedScoreStore(String directory) throws DataAccessException {
+        this(directory, DEFAULT_SHARDS);
+    }
+
+    /**
+     * Opens the store in the given directory, creating it if needed.
+     * The shard count must stay the same for the lifetime of the directory.
+     */
+    public PartitionedScoreStore(String directory, int shardCount) throws DataAccessException {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive");
+        }
+        this.directory = new File(directory);
+        this.shards = new Shard[shardCount];
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            throw new DataAccessException("Could not create score store directory " + directory);
+        }
+        try {
+            loadUsers();
+            for (int i = 0; i < shardCount; i++) {
+                shards[i] = new Shard(new File(this.directory, String.format("shard-%03d.bin", i)));
+                loadShard(i);
+            }
+            sortMergedPartitions();
+            userIndex = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(new File(this.directory, "users.idx"), true), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            closeQuietly();
+            throw new DataAccessException("Could not open score store " + directory, e);
+        } catch (DataAccessException e) {
+            closeQuietly();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the user id index, one "id,name" line per user.
+     * A torn last line (no line break) is cut off. An entry whose name normalizes to
+     * one seen before, written before names were normalized, joins that user.
+     */
+    private void loadUsers() throws IOException {
+        File file = new File(directory, "users.idx");
+        if (!file.exists()) return;
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        int end = bytes.length;
+        while (end > 0 && bytes[end - 1] != '\n') end--;
+        if (end != bytes.length) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(end);
+            }
+        }
+        String text = new String(bytes, 0, end, StandardCharsets.UTF_8);
+        for (String line : text.split("\n")) {
+            int comma = line.indexOf(',');
+            if (comma <= 0) continue;
+            try {
+                int id = Integer.parseInt(line.substring(0, comma));
+                if (id < 0) continue;
+                String name = line.substring(comma + 1);
+                Partition existing = byName.get(GamificationEngine.normalizeName(name));
+                if (existing == null) {
+                    partitionFor(id, name, true);
+                } else if (existing.id != id) {
+                    setId(id, existing);
+                    existing.merged = true;
+                }
+            } catch (NumberFormatException e) {
+                // Ignore invalid entries
+            }
+        }
+    }
+
+    /**
+     * Registers a user under a known id, filling gaps in the id list if needed.
+     * A placeholder is kept by id only, so no name can ever reach it by mistake.
+     */
+    private Partition partitionFor(int id, String name, boolean named) {
+        Partition partition = new Partition(id, name, named);
+        setId(id, partition);
+        if (named) {
+            byName.put(GamificationEngine.normalizeName(name), partition);
+        }
+        userCount++;
+        return partition;
+    }
+
+    private void setId(int id, Partition partition) {
+        while (byId.size() <= id) {
+            byId.add(null);
+        }
+        byId.set(id, partition);
+    }
+
+    /**
+     * Puts the records of users with more than one id back into time order,
+     * as they were indexed shard by shard. Records with the same timestamp keep
+     * their order.
+     */
+    private void sortMergedPartitions() throws IOException {
+        ByteBuffer[][] mapped = null;
+        for (int id = 0; id < byId.size(); id++) {
+            Partition partition = byId.get(id);
+            if (partition == null || partition.id != id || !partition.merged || partition.count == 0) continue;
+            if (mapped == null) {
+                mapped = new ByteBuffer[shards.length][];
+                for (int s = 0; s < shards.length; s++) {
+                    mapped[s] = shards[s].records();
+                }
+            }
+            int count = partition.count;
+            long[] timestamps = new long[count];
+            for (int i = 0; i < count; i++) {
+                long record = partition.records[i];
+                timestamps[i] = chunk(mapped[(int) (record >>> 32)], record).getLong(offset(record) + 8);
+            }
+            // Sort keys of (place of the timestamp among the sorted ones, position), all primitive
+            long[] sorted = timestamps.clone();
+            Arrays.sort(sorted);
+            long[] keys = new long[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = (long) firstIndexOf(sorted, timestamps[i]) << 32 | i;
+            }
+            Arrays.sort(keys);
+            long[] records = new long[count];
+            for (int i = 0; i < count; i++) {
+                records[i] = partition.records[(int) keys[i]];
+            }
+            System.arraycopy(records, 0, partition.records, 0, count);
+            long last = partition.records[count - 1];
+            partition.last = chunk(mapped[(int) (last >>> 32)], last).getInt(offset(last) + 4);
+        }
+    }
+
+    /**
+     * Returns the first index of the value in the sorted array, which contains it.
+     */
+    private static int firstIndexOf(long[] sorted, long value) {
+        int low = 0;
+        int high = sorted.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The mapped chunk of a shard that holds the record; only the low 32 bits,
+     * the record number within the shard, are used.
+     */
+    private static ByteBuffer chunk(ByteBuffer[] chunks, long record) {
+        return chunks[(int) ((record & MAX_SHARD_RECORDS) >>> CHUNK_SHIFT)];
+    }
+
+    /**
+     * Byte offset of a record within its chunk.
+     */
+    private static int offset(long record) {
+        return (int) (record & (CHUNK_RECORDS - 1)) * RECORD_SIZE;
+    }
+
+    /**
+     * Validates the shard header and indexes every record in it.
+     */
+    private void loadShard(int index) throws IOException, DataAccessException {
+        Shard shard = shards[index];
+        long size = shard.channel.size();
+        if (size < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            shard.channel.truncate(0);
+            writeFully(shard.channel, header, 0);
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && shard.channel.read(header, header.position()) > 0) {
+            // keep reading until the header is complete
+        }
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new DataAccessException("Not a partitioned score shard: " + shard.file.getName());
+        }
+        long records = (size - HEADER_SIZE) / RECORD_SIZE;
+        if (records > MAX_SHARD_RECORDS) {
+            throw new DataAccessException("Score shard too large: " + shard.file.getName());
+        }
+        shard.recordCount = records;
+        if (HEADER_SIZE + records * RECORD_SIZE != size) {
+            shard.channel.truncate(HEADER_SIZE + records * RECORD_SIZE); // Torn last record
+        }
+        ByteBuffer[] chunks = shard.records();
+        for (long i = 0; i < records; i++) {
+            ByteBuffer buffer = chunk(chunks, i);
+            int offset = offset(i);
+            int userId = buffer.getInt(offset);
+            int score = buffer.getInt(offset + 4);
+            Partition partition = userId < byId.size() ? byId.get(userId) : null;
+            if (partition == null) {
+                // The id line was lost in a crash; keep the scores under a placeholder by id
+                partition = partitionFor(userId, "#" + userId, false);
+            }
+            partition.add(index, i, score);
+            totals.record(score);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private int shardIndex(int userId) {
+        int hash = userId * 0x9E3779B9; // Spread consecutive ids over the shards
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+    }
+
+    /**
+     * Appends a score for the given user, stamped with the current time.
+     */
+    public void appendScore(User user, int score) throws DataAccessException {
+        appendScore(user.getName(), score, System.currentTimeMillis());
+    }
+
+    /**
+     * Appends a score for the user with the given name, stamped with the current time.
+     */
+    public void appendScore(String userName, int score) throws DataAccessException {
+        appendScore(userName, score, System.currentTimeMillis());
+    }
+
+    /**
+     * Appends a score for the given user. A user seen for the first time is given
+     * the next free id, which is written to the user index before the score itself.
+     * Names that normalize to the same key are the same user.
+     * Score must be between 0 and 100.
+     */
+    public synchronized void appendScore(String userName, int score, long timestamp) throws DataAccessException {
+        if (score < 0 || score > 100) {
+            throw new DataAccessException("Score must be between 0 and 100");
+        }
+        if (userName == null || userName.isEmpty() || userName.indexOf('\n') >= 0) {
+            throw new DataAccessException("Invalid user name");
+        }
+        Partition partition = byName.get(GamificationEngine.normalizeName(userName));
+        try {
+            if (partition == null) {
+                partition = partitionFor(byId.size(), userName, true);
+                userIndex.write(partition.id + "," + userName + "\n");
+                userIndex.flush();
+            }
+            int index = shardIndex(partition.id);
+            Shard shard = shards[index];
+            shard.checkRoom(1);
+            shard.writeBuffer.clear();
+            shard.writeBuffer.putInt(partition.id).putInt(score).putLong(timestamp).flip();
+            writeFully(shard.channel, shard.writeBuffer, HEADER_SIZE + shard.recordCount * RECORD_SIZE);
+            partition.add(index, shard.recordCount, score);
+            shard.recordCount++;
+            totals.record(score);
+        } catch (IOException e) {
+            throw new DataAccessException("Failed to append score.", e);
+        }
+    }
+
+    /**
+     * Appends a batch of scores, e.g. when importing another kiosk's history.
+     * New users are written to the user index with one flush, and each shard gets
+     * its records in a single write instead of one write per score.
+     * Nothing is written unless every entry is valid.
+     *
+     * @param userNames  the user each score belongs to
+     * @param batch      the scores, oldest first
+     * @param timestamps when each score was recorded, in epoch milliseconds
+     * @param count      number of entries of the three arrays to append
+     */
+    public synchronized void appendScores(String[] userNames, int[] batch, long[] timestamps, int count)
+            throws DataAccessException {
+        if (count < 0 || count > userNames.length || count > batch.length || count > timestamps.length) {
+            throw new IllegalArgumentException("Count out of range: " + count);
+        }
+        for (int i = 0; i < count; i++) {
+            if (batch[i] < 0 || batch[i] > 100) {
+                throw new DataAccessException("Score must be between 0 and 100");
+            }
+            String userName = userNames[i];
+            if (userName == null || userName.isEmpty() || userName.indexOf('\n') >= 0) {
+                throw new DataAccessException("Invalid user name");
+            }
+        }
+        try {
+            Partition[] partitions = new Partition[count];
+            int[] perShard = new int[shards.length];
+            boolean newUsers = false;
+            for (int i = 0; i < count; i++) {
+                Partition partition = byName.get(GamificationEngine.normalizeName(userNames[i]));
+                if (partition == null) {
+                    partition = partitionFor(byId.size(), userNames[i], true);
+                    userIndex.write(partition.id + "," + userNames[i] + "\n");
+                    newUsers = true;
+                }
+                partitions[i] = partition;
+                perShard[shardIndex(partition.id)]++;
+            }
+            for (int s = 0; s < shards.length; s++) {
+                shards[s].checkRoom(perShard[s]);
+            }
+            if (newUsers) {
+                userIndex.flush(); // Ids are on disk before any score refers to them
+            }
+
+            ByteBuffer[] buffers = new ByteBuffer[shards.length];
+            for (int s = 0; s < shards.length; s++) {
+                if (perShard[s] > 0) buffers[s] = ByteBuffer.allocate(perShard[s] * RECORD_SIZE);
+            }
+            for (int i = 0; i < count; i++) {
+                buffers[shardIndex(partitions[i].id)].putInt(partitions[i].id).putInt(batch[i]).putLong(timestamps[i]);
+            }
+            for (int s = 0; s < shards.length; s++) {
+                if (buffers[s] == null) continue;
+                buffers[s].flip();
+                writeFully(shards[s].channel, buffers[s], HEADER_SIZE + shards[s].recordCount * RECORD_SIZE);
+            }
+            for (int i = 0; i < count; i++) {
+                int index = shardIndex(partitions[i].id);
+                partitions[i].add(index, shards[index].recordCount++, batch[i]);
+                totals.record(batch[i]);
+            }
+        } catch (IOException e) {
+            throw new DataAccessException("Failed to append scores.", e);
+        }
+    }
+
+    /**
+     * Returns the given user's scores, oldest first.
+     */
+    public List<Integer> getUserScores(User user) throws DataAccessException {
+        return getUserScores(user.getName());
+    }
+
+    /**
+     * Returns the scores of the user with the given name, oldest first,
+     * or an empty list for an unknown user. Only that user's records are read.
+     */
+    public synchronized List<Integer> getUserScores(String userName) throws DataAccessException {
+        Partition partition = partition(userName);
+        if (partition == null) return new ArrayList<>();
+        List<Integer> result = new ArrayList<>(partition.count);
+        forEachScore(partition, (score, timestamp, userId) -> result.add(score));
+        return result;
+    }
+
+    /**
+     * Calls the visitor for each of the user's scores, oldest first,
+     * with the score's timestamp and the user's id.
+     */
+    public synchronized void forEachUserScore(String userName, ScoreVisitor visitor) throws DataAccessException {
+        Partition partition = partition(userName);
+        if (partition != null) forEachScore(partition, visitor);
+    }
+
+    /**
+     * Calls the visitor for every stored score, user by user in the order the users
+     * were first seen, each user's scores oldest first. Unlike the by-name methods
+     * this also reaches placeholder users; see {@link #getUserName(int)}.
+     */
+    public synchronized void forEachScore(ScoreVisitor visitor) throws DataAccessException {
+        for (int id = 0; id < byId.size(); id++) {
+            Partition partition = byId.get(id);
+            if (partition != null && partition.id == id) forEachScore(partition, visitor);
+        }
+    }
+
+    private void forEachScore(Partition partition, ScoreVisitor visitor) throws DataAccessException {
+        ByteBuffer[] chunks = null;
+        int mappedShard = -1;
+        for (int i = 0; i < partition.count; i++) {
+            long record = partition.records[i];
+            int shard = (int) (record >>> 32);
+            if (shard != mappedShard) {
+                chunks = mappedRecords(shards[shard]);
+                mappedShard = shard;
+            }
+            ByteBuffer buffer = chunk(chunks, record);
+            int offset = offset(record);
+            visitor.visit(buffer.getInt(offset + 4), buffer.getLong(offset + 8), partition.id);
+        }
+    }
+
+    private Partition partition(String userName) {
+        return userName == null ? null : byName.get(GamificationEngine.normalizeName(userName));
+    }
+
+    private ByteBuffer[] mappedRecords(Shard shard) throws DataAccessException {
+        try {
+            return shard.records();
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to map score shard.", e);
+        }
+    }
+
+    /**
+     * Returns the number of scores stored for the given user.
+     */
+    public synchronized int getUserScoreCount(String userName) {
+        Partition partition = partition(userName);
+        return partition == null ? 0 : partition.count;
+    }
+
+    /**
+     * Returns the average score of the given user, or 0.0 if they have none.
+     */
+    public synchronized double getUserAverageScore(String userName) {
+        Partition partition = partition(userName);
+        return partition == null || partition.count == 0 ? 0.0 : (double) partition.sum / partition.count;
+    }
+
+    /**
+     * Returns the highest score of the given user, or 0 if they have none.
+     */
+    public synchronized int getUserHighestScore(String userName) {
+        Partition partition = partition(userName);
+        return partition == null ? 0 : partition.max;
+    }
+
+    /**
+     * Returns the lowest score of the given user, or 0 if they have none.
+     */
+    public synchronized int getUserLowestScore(String userName) {
+        Partition partition = partition(userName);
+        return partition == null ? 0 : partition.min;
+    }
+
+    /**
+     * Returns the most recent score of the given user, or 0 if they have none.
+     */
+    public synchronized int getUserLatestScore(String userName) {
+        Partition partition = partition(userName);
+        return partition == null ? 0 : partition.last;
+    }
+
+    /**
+     * Returns the name of every user, as first written, in the order they were first seen.
+     * Placeholders for users whose id line was lost are left out.
+     */
+    public synchronized List<String> getUserNames() {
+        List<String> names = new ArrayList<>(byName.size());
+        for (int id = 0; id < byId.size(); id++) {
+            Partition partition = byId.get(id);
+            if (partition != null && partition.id == id && partition.named) names.add(partition.name);
+        }
+        return names;
+    }
+
+    /**
+     * Returns the name of the user a score's id belongs to, or null for an unknown id.
+     * Scores whose id line was lost in a crash belong to a placeholder named "#" and
+     * the id, which is never matched against a user name.
+     */
+    public synchronized String getUserName(int userId) {
+        Partition partition = userId >= 0 && userId < byId.size() ? byId.get(userId) : null;
+        return partition == null ? null : partition.name;
+    }
+
+    /**
+     * Returns the number of users, placeholders included.
+     */
+    public synchronized int getUserCount() {
+        return userCount;
+    }
+
+    /**
+     * Returns the aggregates over every user's scores.
+     */
+    public synchronized ScoreSummary getTotals() {
+        return totals.copy();
+    }
+
+    /**
+     * Returns the number of scores stored across all users.
+     */
+    public synchronized long getScoreCount() {
+        return totals.getCount();
+    }
+
+    /**
+     * Returns the average score across all users, or 0.0 if there are no scores.
+     */
+    public synchronized double getAverageScore() {
+        return totals.getAverage();
+    }
+
+    /**
+     * Forces every shard and the user index to disk and closes them.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        IOException failure = null;
+        if (userIndex != null) {
+            try {
+                userIndex.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        for (Shard shard : shards) {
+            if (shard == null) continue;
+            shard.chunks = new MappedByteBuffer[0];
+            try {
+                shard.channel.force(false);
+                shard.channel.close();
+            } catch (IOException e) {
+                if (failure == null) failure = e;
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            // Already failing, nothing more to report
+        }
+    }
+}
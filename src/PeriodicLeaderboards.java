@@ -0,0 +1,225 @@
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Daily, weekly and monthly leaderboards, kept next to the all-time one so that
+ * early players do not hold the top places forever.
+ *
+ * Each {@link LeaderboardPeriod} has one bucket for the span it is in now: a
+ * Leaderboard of its own, ranking users by the points they earned since the span
+ * started. Once the span is over the bucket is rotated out. Its board is frozen
+ * into a snapshot and kept as a past {@link Result}, and an empty bucket starts
+ * for the new span. Only the newest {@code retained} results of each period are
+ * kept, so memory follows the number of buckets, not the length of the history.
+ *
+ * Spans follow the calendar in the clock's time zone. Rotation happens on the first
+ * {@link #record(User, int)} or {@link #rotateIfNeeded()} after a span ends; spans
+ * in which nothing was recorded at all leave no result.
+ *
+ * Not thread safe; GamificationEngine only uses it under its lock.
+ */
+public class PeriodicLeaderboards {
+    public static final int DEFAULT_RETAINED = 1;
+
+    /**
+     * The final standings of a span that is over.
+     */
+    public static final class Result {
+        private final LeaderboardPeriod period;
+        private final LocalDate start;
+        private final LocalDate end;
+        private final LeaderboardSnapshot board;
+
+        Result(LeaderboardPeriod period, LocalDate start, LocalDate end, LeaderboardSnapshot board) {
+            this.period = period;
+            this.start = start;
+            this.end = end;
+            this.board = board;
+        }
+
+        public LeaderboardPeriod getPeriod() {
+            return period;
+        }
+
+        /**
+         * The first day of the span.
+         */
+        public LocalDate getStart() {
+            return start;
+        }
+
+        /**
+         * The first day after the span.
+         */
+        public LocalDate getEnd() {
+            return end;
+        }
+
+        public LeaderboardSnapshot getBoard() {
+            return board;
+        }
+
+        @Override
+        public String toString() {
+            return period + " " + start + " to " + end + ": " + board.size() + " users";
+        }
+    }
+
+    private static final class Bucket {
+        final LocalDate start;
+        final LocalDate end;
+        final Instant endsAt;
+        final Leaderboard board = new Leaderboard();
+
+        Bucket(LocalDate start, LocalDate end, Instant endsAt) {
+            this.start = start;
+            this.end = end;
+            this.endsAt = endsAt;
+        }
+    }
+
+    private final Clock clock;
+    private final int retained;
+    private final Map<LeaderboardPeriod, Bucket> buckets = new EnumMap<>(LeaderboardPeriod.class);
+    private final Map<LeaderboardPeriod, Deque<Result>> history = new EnumMap<>(LeaderboardPeriod.class);
+
+    /**
+     * @param clock    decides the current span; its zone decides where days begin
+     * @param retained how many past results to keep per period
+     */
+    public PeriodicLeaderboards(Clock clock, int retained) {
+        if (retained < 0) {
+            throw new IllegalArgumentException("Retained results must not be negative");
+        }
+        this.clock = clock;
+        this.retained = retained;
+        LocalDate today = LocalDate.now(clock);
+        for (LeaderboardPeriod period : LeaderboardPeriod.values()) {
+            buckets.put(period, newBucket(period, today));
+            history.put(period, new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Credits points earned now to the user in every period's current bucket.
+     */
+    public void record(User user, int points) {
+        rotateIfNeeded();
+        for (Bucket bucket : buckets.values()) {
+            int placed = bucket.board.pointsOf(user);
+            if (placed < 0) {
+                bucket.board.add(user, points);
+            } else {
+                bucket.board.update(user, placed + points);
+            }
+        }
+    }
+
+    /**
+     * Rotates out every bucket whose span is over.
+     *
+     * @return whether any bucket was rotated
+     */
+    public boolean rotateIfNeeded() {
+        Instant now = clock.instant();
+        boolean rotated = false;
+        for (LeaderboardPeriod period : LeaderboardPeriod.values()) {
+            Bucket bucket = buckets.get(period);
+            if (now.isBefore(bucket.endsAt)) continue;
+            Deque<Result> results = history.get(period);
+            if (retained > 0 && !bucket.board.isEmpty()) {
+                results.addFirst(new Result(period, bucket.start, bucket.end, bucket.board.snapshot()));
+                while (results.size() > retained) {
+                    results.removeLast();
+                }
+            }
+            buckets.put(period, newBucket(period, LocalDate.now(clock)));
+            rotated = true;
+        }
+        return rotated;
+    }
+
+    /**
+     * Returns the current standings for the period.
+     */
+    public LeaderboardSnapshot snapshot(LeaderboardPeriod period) {
+        return buckets.get(period).board.snapshot();
+    }
+
+    /**
+     * Returns the first day of the period's current span.
+     */
+    public LocalDate getStart(LeaderboardPeriod period) {
+        return buckets.get(period).start;
+    }
+
+    /**
+     * Returns the kept results of the period's past spans, newest first.
+     */
+    public List<Result> getHistory(LeaderboardPeriod period) {
+        return new ArrayList<>(history.get(period));
+    }
+
+    /**
+     * Returns how long until the next bucket is due to rotate, 0 if one is overdue.
+     */
+    public long millisUntilRotation() {
+        Instant now = clock.instant();
+        long millis = Long.MAX_VALUE;
+        for (Bucket bucket : buckets.values()) {
+            millis = Math.min(millis, Math.max(0, bucket.endsAt.toEpochMilli() - now.toEpochMilli()));
+        }
+        return millis;
+    }
+
+    /**
+     * Puts back the standings of a span saved earlier, e.g. from an engine snapshot.
+     * If the span is still the current one, the points are credited to its bucket;
+     * if it has ended since, it is kept as a past result like a rotated bucket.
+     * A span that has not started yet is ignored.
+     */
+    public void restore(LeaderboardPeriod period, LocalDate start, List<User> users, int[] points) {
+        rotateIfNeeded();
+        Bucket bucket = buckets.get(period);
+        if (start.equals(bucket.start)) {
+            for (int i = 0; i < users.size(); i++) {
+                int placed = bucket.board.pointsOf(users.get(i));
+                if (placed < 0) {
+                    bucket.board.add(users.get(i), points[i]);
+                } else {
+                    bucket.board.update(users.get(i), placed + points[i]);
+                }
+            }
+        } else if (start.isBefore(bucket.start) && retained > 0 && !users.isEmpty()) {
+            Deque<Result> results = history.get(period);
+            if (!results.isEmpty() && !start.isAfter(results.peekFirst().getStart())) return;
+            Leaderboard board = new Leaderboard();
+            for (int i = 0; i < users.size(); i++) {
+                board.add(users.get(i), points[i]);
+            }
+            results.addFirst(new Result(period, start, period.next(start), board.snapshot()));
+            while (results.size() > retained) {
+                results.removeLast();
+            }
+        }
+    }
+
+    /**
+     * Empties the current buckets and forgets every past result.
+     */
+    public void clear() {
+        LocalDate today = LocalDate.now(clock);
+        for (LeaderboardPeriod period : LeaderboardPeriod.values()) {
+            buckets.put(period, newBucket(period, today));
+            history.get(period).clear();
+        }
+    }
+
+    private Bucket newBucket(LeaderboardPeriod period, LocalDate today) {
+        LocalDate start = period.start(today);
+        LocalDate end = period.next(start);
+        return new Bucket(start, end, end.atStartOfDay(clock.getZone()).toInstant());
+    }
+}
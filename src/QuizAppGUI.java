@@ -5,6 +5,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.io.File;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Swing version of the quiz application with integrated gamification.
@@ -12,7 +15,6 @@ import java.io.File;
  * followed by gamification results (badges and leaderboard) all in the same window.
  */
 public class QuizAppGUI {
-    private static List<User> allUsers = new ArrayList<>(); // Global user list for leaderboard
     
     private JFrame frame;
     private CardLayout cardLayout;
@@ -24,6 +26,7 @@ public class QuizAppGUI {
 
     private QuizModule quiz;
     private GamificationEngine gamificationEngine;
+    private LeaderboardService leaderboardService; // the engine, award pipeline and leaderboard shared by every window
     private List<String> userAnswers;
     private int currentQuestionIndex = 0;
     private User currentUser;
@@ -34,17 +37,50 @@ public class QuizAppGUI {
     private static final int MOBILE_WIDTH = 394;
     private static final int MOBILE_HEIGHT = 700;
 
+    // Engine state survives restarts: a binary snapshot for a fast start, written
+    // periodically and on exit, and the JSON state file, written on exit, as fallback
+    private static final String SNAPSHOT_FILE = "gamification.snapshot";
+    private static final String STATE_FILE = "gamification.json";
+    private static final int SNAPSHOT_INTERVAL_MS = 30_000;
+    private static final int EXIT_FLUSH_MS = 5_000;
+    private static final int LEADERBOARD_TOP = 10; // rows shown above the current user's own row
+    // Writes the snapshot and state file, so their fsyncs never hold up the Swing event thread
+    private final ScheduledExecutorService persistence = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "engine-persistence");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long snapshotVersion; // leaderboard version the snapshot on disk was written at, used on the persistence thread
+    private LeaderboardSnapshot leaderboardShown; // the snapshot the leaderboard screen was last drawn from
+    private LeaderboardPeriod leaderboardPeriod; // the period the leaderboard screen shows, null for all time
+
     public QuizAppGUI() {
-        // Get user name at startup
+        // Initialize gamification engine with the users from previous runs
+        leaderboardService = LeaderboardService.getInstance();
+        gamificationEngine = leaderboardService.getEngine();
+        restoreEngine();
+
+        // Get user name at startup; a returning user continues their own record
         getCurrentUserInfo();
         
         frame = new JFrame("Mental Health Learning & Quiz");
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE); // Exits once the engine is saved
         frame.setSize(MOBILE_WIDTH, MOBILE_HEIGHT);
         frame.setLocationRelativeTo(null);
 
-        // Initialize gamification engine
-        gamificationEngine = new GamificationEngine();
+        leaderboardService.addListener(change -> SwingUtilities.invokeLater(() -> applyLeaderboardChange(change)));
+        leaderboardService.addPeriodListener((period, board) -> SwingUtilities.invokeLater(() -> {
+            if (period == leaderboardPeriod) refreshLeaderboard();
+        }));
+        persistence.scheduleWithFixedDelay(this::snapshotEngine,
+                SNAPSHOT_INTERVAL_MS, SNAPSHOT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                frame.setVisible(false);
+                persistence.execute(QuizAppGUI.this::saveAndExit);
+            }
+        });
         
         quiz = new QuizModule(120);
         userAnswers = new ArrayList<>();
@@ -71,6 +107,79 @@ public class QuizAppGUI {
         frame.setVisible(true);
     }
 
+    /**
+     * Restores users, points and badges from the last engine snapshot, or from the
+     * JSON state file if there is no usable snapshot, and reports how long it took.
+     */
+    private void restoreEngine() {
+        long start = System.nanoTime();
+        int restored = 0;
+        String source = SNAPSHOT_FILE;
+        try {
+            restored = new EngineSnapshot(SNAPSHOT_FILE).restore(gamificationEngine);
+        } catch (DataAccessException e) {
+            System.err.println("Could not restore engine snapshot: " + e.getMessage());
+        }
+        if (restored == 0) {
+            source = STATE_FILE;
+            try {
+                restored = new GamificationStore(STATE_FILE).load(gamificationEngine);
+            } catch (DataAccessException e) {
+                System.err.println("Could not load gamification state: " + e.getMessage());
+            }
+        }
+        if (restored > 0) {
+            System.out.printf("Restored %d users from %s in %.1f ms%n",
+                    restored, source, (System.nanoTime() - start) / 1_000_000.0);
+        }
+        snapshotVersion = gamificationEngine.getLeaderboardSnapshot().getVersion();
+    }
+
+    /**
+     * Writes a snapshot of the engine if its leaderboard was published again since
+     * the last one, whoever changed it. Runs on the persistence thread.
+     */
+    private void snapshotEngine() {
+        long version = gamificationEngine.getLeaderboardSnapshot().getVersion();
+        if (version == snapshotVersion) return;
+        try {
+            new EngineSnapshot(SNAPSHOT_FILE).write(gamificationEngine);
+            snapshotVersion = version;
+        } catch (DataAccessException e) {
+            System.err.println("Could not write engine snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Settles the awards still queued, writes the snapshot and the state file and
+     * exits. Runs on the persistence thread once the window is closed.
+     */
+    private void saveAndExit() {
+        try {
+            if (!leaderboardService.getAwardPipeline().flush(EXIT_FLUSH_MS)) {
+                System.err.println("Awards still queued after " + EXIT_FLUSH_MS
+                        + " ms; saving without them: " + leaderboardService.getAwardPipeline().getMetrics());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        snapshotEngine();
+        saveEngineState();
+        System.exit(0);
+    }
+
+    /**
+     * Writes the engine to the portable JSON state file, the fallback when the
+     * snapshot is missing or damaged. Called on exit only, as it is slower to write.
+     */
+    private void saveEngineState() {
+        try {
+            new GamificationStore(STATE_FILE).save(gamificationEngine);
+        } catch (DataAccessException e) {
+            System.err.println("Could not save gamification state: " + e.getMessage());
+        }
+    }
+
     /**
      * Collect user information before starting the application
      */
@@ -86,7 +195,7 @@ public class QuizAppGUI {
             userName = "Anonymous User";
         }
         
-        currentUser = new User(userName.trim());
+        currentUser = gamificationEngine.getOrCreateUser(userName.trim());
     }
 
     private JPanel createQuizPanel() {
@@ -338,7 +447,21 @@ public class QuizAppGUI {
         refreshBtn.setFont(new Font("Times New Roman", Font.PLAIN, 14));
         refreshBtn.addActionListener(e -> updateLeaderboardContentHTML(leaderboardPane));
 
+        // All time, or the points earned today, this week or this month
+        JComboBox<String> periodBox = new JComboBox<>();
+        periodBox.addItem("All time");
+        for (LeaderboardPeriod period : LeaderboardPeriod.values()) {
+            periodBox.addItem(period.getLabel());
+        }
+        periodBox.setFont(new Font("Times New Roman", Font.PLAIN, 14));
+        periodBox.addActionListener(e -> {
+            int selected = periodBox.getSelectedIndex();
+            leaderboardPeriod = selected > 0 ? LeaderboardPeriod.values()[selected - 1] : null;
+            updateLeaderboardContentHTML(leaderboardPane);
+        });
+
         buttonPanel.add(backBtn);
+        buttonPanel.add(periodBox);
         buttonPanel.add(refreshBtn);
 
         panel.add(headerPanel, BorderLayout.NORTH);
@@ -352,8 +475,13 @@ public class QuizAppGUI {
     }
 
     // New method for HTML-based leaderboard with images
+    // Shows the top 10 plus the current user's own row, so only those rows are formatted.
+    // Draws from one leaderboard snapshot, and does nothing if that snapshot is already shown.
     private void updateLeaderboardContentHTML(JEditorPane leaderboardPane) {
-        allUsers.sort((u1, u2) -> u2.getTotalPoints() - u1.getTotalPoints());
+        LeaderboardSnapshot board = leaderboardPeriod == null
+                ? gamificationEngine.getLeaderboardSnapshot()
+                : gamificationEngine.getPeriodLeaderboard(leaderboardPeriod);
+        if (board == leaderboardShown) return;
         StringBuilder html = new StringBuilder();
         
         html.append("<html><body style='font-family: monospaced; font-size: 12px;'>");
@@ -361,38 +489,55 @@ public class QuizAppGUI {
         html.append("<tr style='background-color: #f0f0f0; font-weight: bold;'>");
         html.append("<th>Rank</th><th>Name</th><th>Points</th><th>Badge</th></tr>");
         
-        int rank = 1;
-        for (User u : allUsers) {
-            html.append("<tr>");
-            
-            // Rank with image or emoji
-            html.append("<td align='center'>");
-            html.append(getRankSymbolHTML(rank));
-            html.append(rank);
-            html.append("</td>");
-            
-            // Name
-            String displayName = u.getName().length() > 13 ? u.getName().substring(0, 13) + ".." : u.getName();
-            html.append("<td>").append(displayName).append("</td>");
-            
-            // Points
-            html.append("<td align='center'>").append(u.getTotalPoints()).append("</td>");
-            
-            // Badge with image
-            html.append("<td align='center'>");
-            html.append(getBadgeHTML(u));
-            html.append("</td>");
-            
-            html.append("</tr>");
-            rank++;
+        for (Leaderboard.Entry entry : board.topN(LEADERBOARD_TOP)) {
+            appendLeaderboardRowHTML(html, entry);
         }
         
-        if (allUsers.isEmpty()) {
+        // Current user outside the top 10: a gap, then their own row
+        int currentRank = currentUser != null ? board.rankOf(currentUser) : 0;
+        if (currentRank > LEADERBOARD_TOP) {
+            if (currentRank > LEADERBOARD_TOP + 1) {
+                html.append("<tr><td colspan='4' align='center'>...</td></tr>");
+            }
+            for (Leaderboard.Entry entry : board.around(currentUser, 0)) {
+                appendLeaderboardRowHTML(html, entry);
+            }
+        }
+        
+        if (board.isEmpty()) {
             html.append("<tr><td colspan='4' align='center'>No users yet!</td></tr>");
         }
         
         html.append("</table></body></html>");
         leaderboardPane.setText(html.toString());
+        leaderboardShown = board;
+    }
+
+    private void appendLeaderboardRowHTML(StringBuilder html, Leaderboard.Entry entry) {
+        User u = entry.getUser();
+        int rank = entry.getRank();
+        // Highlight the current user's row
+        html.append(u == currentUser ? "<tr style='background-color: #fff3c4; font-weight: bold;'>" : "<tr>");
+        
+        // Rank with image or emoji
+        html.append("<td align='center'>");
+        html.append(getRankSymbolHTML(rank));
+        html.append(rank);
+        html.append("</td>");
+        
+        // Name
+        String displayName = u.getName().length() > 13 ? u.getName().substring(0, 13) + ".." : u.getName();
+        html.append("<td>").append(displayName).append("</td>");
+        
+        // Points
+        html.append("<td align='center'>").append(entry.getPoints()).append("</td>");
+        
+        // Badge with image
+        html.append("<td align='center'>");
+        html.append(getBadgeHTML(u));
+        html.append("</td>");
+        
+        html.append("</tr>");
     }
 
     // Get rank symbol as HTML (with images if available)
@@ -524,10 +669,8 @@ public class QuizAppGUI {
         
         msgArea.setText(message);
 
-        // Process gamification
-        gamificationEngine.addUser(currentUser);
-        allUsers.add(currentUser);
-        gamificationEngine.awardPointsToUser(currentUser, finalCorrectAnswers);
+        // Process gamification; the badge and leaderboard place follow from the pipeline
+        leaderboardService.submit(currentUser, finalCorrectAnswers);
 
         // Update gamification panel
         updateGamificationPanel();
@@ -540,6 +683,9 @@ public class QuizAppGUI {
         JPanel gamificationPanel = (JPanel) getComponentByName("gamification");
         JLabel badgeImage = (JLabel) gamificationPanel.getClientProperty("badgeImage");
         JTextArea resultArea = (JTextArea) gamificationPanel.getClientProperty("resultArea");
+        // Worked out from the points here, the user's own badge is set once the pipeline settles the award
+        Badge badge = gamificationEngine.badgeFor(currentUser.getTotalPoints());
+        String badgeName = badge != null ? badge.getBadgeName() : "None";
 
         // Update content
         StringBuilder sb = new StringBuilder();
@@ -547,19 +693,19 @@ public class QuizAppGUI {
         sb.append("═".repeat(30)).append("\n\n");
         sb.append("Name: ").append(currentUser.getName()).append("\n\n");
         sb.append("Points Earned: ").append(currentUser.getTotalPoints()).append(" points\n\n");
-        sb.append("Badge Achieved: ").append(currentUser.getBadgeName()).append("\n\n");
+        sb.append("Badge Achieved: ").append(badgeName).append("\n\n");
         
-        if (currentUser.getBadge() != null) {
-            sb.append("Requirements: ").append(currentUser.getBadge().getRequirement()).append("\n\n");
+        if (badge != null) {
+            sb.append("Requirements: ").append(badge.getRequirement()).append("\n\n");
         }
         
-        String motivation = getMotivationalMessage(currentUser.getBadgeName());
+        String motivation = getMotivationalMessage(badgeName);
         sb.append("Message: ").append(motivation);
         
         resultArea.setText(sb.toString());
 
         // Display badge image
-        String badgeIconPath = currentUser.getBadgeIconPath();
+        String badgeIconPath = badge != null ? badge.getBadgeIconPath() : "";
         if (badgeIconPath != null && !badgeIconPath.isEmpty()) {
             try {
                 ImageIcon icon = new ImageIcon(badgeIconPath);
@@ -576,38 +722,67 @@ public class QuizAppGUI {
                 Image scaledImg = img.getScaledInstance(scaledWidth, scaledHeight, Image.SCALE_SMOOTH);
                 badgeImage.setIcon(new ImageIcon(scaledImg));
             } catch (Exception ex) {
-                badgeImage.setText("Badge: " + currentUser.getBadgeName());
+                badgeImage.setText("Badge: " + badgeName);
                 badgeImage.setFont(new Font("Times New Roman", Font.BOLD, 16));
             }
         }
 
-        // Update leaderboard
-        JPanel leaderboardPanel = (JPanel) getComponentByName("leaderboard");
-        JEditorPane leaderboardPane = (JEditorPane) leaderboardPanel.getClientProperty("leaderboardPane");
-        updateLeaderboardContentHTML(leaderboardPane);
+        refreshLeaderboard();
+    }
+
+    /**
+     * Redraws the leaderboard screen only when the change reaches a row it shows:
+     * the top 10 or the current user's own row. Periodic boards are redrawn by the
+     * period listener instead.
+     */
+    private void applyLeaderboardChange(LeaderboardService.Change change) {
+        if (leaderboardPeriod != null) return;
+        if (leaderboardShown != change.getPrevious()) {
+            refreshLeaderboard(); // The screen missed an earlier change
+            return;
+        }
+        int ownRank = currentUser != null ? change.getCurrent().rankOf(currentUser) : 0;
+        if (change.affects(1, LEADERBOARD_TOP) || (ownRank > 0 && change.affects(ownRank, ownRank))) {
+            refreshLeaderboard();
+        } else {
+            leaderboardShown = change.getCurrent(); // Nothing on screen changed
+        }
+    }
+
+    /**
+     * Redraws the leaderboard screen, if it has been built yet.
+     */
+    private void refreshLeaderboard() {
+        Component leaderboardPanel = mainPanel != null ? getComponentByName("leaderboard") : null;
+        if (leaderboardPanel instanceof JPanel) {
+            JEditorPane leaderboardPane = (JEditorPane) ((JPanel) leaderboardPanel).getClientProperty("leaderboardPane");
+            if (leaderboardPane != null) {
+                updateLeaderboardContentHTML(leaderboardPane);
+            }
+        }
     }
 
     private void updateLeaderboardContent(JTextArea leaderboardArea) {
         leaderboardArea.setText("");
-        allUsers.sort((u1, u2) -> u2.getTotalPoints() - u1.getTotalPoints());
+        List<Leaderboard.Entry> ranked = gamificationEngine.getLeaderboardSnapshot().entries(); // Already in leaderboard order
         StringBuilder sb = new StringBuilder();
         
         sb.append(String.format("%-5s %-15s %-8s %-12s%n", "Rank", "Name", "Points", "Badge"));
         sb.append("─".repeat(45)).append("\n");
         
-        int rank = 1;
-        for (User u : allUsers) {
+        for (Leaderboard.Entry entry : ranked) {
+            User u = entry.getUser();
+            int rank = entry.getRank();
             String rankSymbol = getRankSymbol(rank);
             sb.append(String.format("%-5s %-15s %-8d %-12s%n",
                 rankSymbol + rank, 
                 u.getName().length() > 13 ? u.getName().substring(0, 13) + ".." : u.getName(),
-                u.getTotalPoints(), 
+                entry.getPoints(), 
                 u.getBadgeName()
             ));
-            rank++;
         }
         
-        if (allUsers.isEmpty()) {
+        if (ranked.isEmpty()) {
             sb.append("\n").append(" ".repeat(15)).append("No users yet!");
         }
         
@@ -0,0 +1,589 @@
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Bulk import and export of score records as CSV or NDJSON, for merging the
+ * exports of many kiosks.
+ *
+ * Formats (chosen by the file extension, {@code .csv} or {@code .ndjson}/{@code .jsonl}):
+ * <ul>
+ *   <li>CSV with a header row naming the columns {@code score}, {@code timestamp}
+ *       and {@code user} in any order; only {@code score} is required. User names
+ *       containing commas or quotes are quoted the usual CSV way.</li>
+ *   <li>NDJSON, one object per line: {@code {"user":"alice","score":80,"timestamp":1718000000000}}.
+ *       Other fields are ignored.</li>
+ * </ul>
+ * A missing timestamp is stored as 0 (unknown). Records with a score outside 0 to
+ * 100, or that cannot be parsed, are skipped and counted as rejected, the same way
+ * DataManager ignores invalid lines in its own log.
+ *
+ * An import reads the file in chunks of a few megabytes, cut at line breaks, and
+ * parses the chunks on all cores. The parsed batches are appended to the store in
+ * file order, one batched write per chunk, while later chunks are still being
+ * parsed. Progress is reported in records per second to an optional listener.
+ *
+ * Usage: java ScoreBulkTransfer import|export &lt;file.csv|file.ndjson&gt; &lt;score log|store directory&gt;
+ * A target that is a directory (or ends with a separator) is a PartitionedScoreStore,
+ * anything else a DataManager score log.
+ */
+public class ScoreBulkTransfer {
+    private static final int CHUNK_BYTES = 4 << 20;
+    private static final long PROGRESS_INTERVAL_NANOS = 500_000_000L;
+
+    public enum Format {
+        CSV, NDJSON;
+
+        /**
+         * Picks the format from the file extension.
+         */
+        public static Format of(Path file) {
+            String name = file.getFileName().toString().toLowerCase();
+            if (name.endsWith(".csv")) return CSV;
+            if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) return NDJSON;
+            throw new IllegalArgumentException("Unknown bulk file format: " + name);
+        }
+    }
+
+    /**
+     * Receives progress reports while a transfer runs, on the calling thread.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        /**
+         * @param records          records transferred so far
+         * @param rejected         records skipped as invalid so far
+         * @param recordsPerSecond average rate since the transfer started
+         */
+        void progress(long records, long rejected, double recordsPerSecond);
+    }
+
+    /**
+     * Outcome of a finished transfer.
+     */
+    public static final class Result {
+        private final long records;
+        private final long rejected;
+        private final long elapsedNanos;
+
+        Result(long records, long rejected, long elapsedNanos) {
+            this.records = records;
+            this.rejected = rejected;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getRecords() {
+            return records;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getRecordsPerSecond() {
+            return elapsedNanos == 0 ? 0.0 : records * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d records (%,d rejected) in %.2f s, %,.0f records/sec",
+                    records, rejected, elapsedNanos / 1e9, getRecordsPerSecond());
+        }
+    }
+
+    /**
+     * Records parsed from one chunk, in file order.
+     */
+    private static final class Batch {
+        String[] users;
+        int[] scores;
+        long[] timestamps;
+        int size;
+        int rejected;
+
+        Batch(int capacity, boolean withUsers) {
+            users = withUsers ? new String[capacity] : null;
+            scores = new int[capacity];
+            timestamps = new long[capacity];
+        }
+
+        void add(String user, int score, long timestamp) {
+            if (size == scores.length) {
+                int capacity = size * 2;
+                if (users != null) users = Arrays.copyOf(users, capacity);
+                scores = Arrays.copyOf(scores, capacity);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+            }
+            if (users != null) users[size] = user;
+            scores[size] = score;
+            timestamps[size] = timestamp;
+            size++;
+        }
+    }
+
+    @FunctionalInterface
+    private interface BatchWriter {
+        void write(Batch batch) throws DataAccessException;
+    }
+
+    @FunctionalInterface
+    private interface RecordSource {
+        void forEach(RecordWriter writer) throws DataAccessException, IOException;
+    }
+
+    @FunctionalInterface
+    private interface RecordWriter {
+        void write(String user, int score, long timestamp) throws IOException;
+    }
+
+    private final int threads;
+    private ProgressListener listener;
+
+    /**
+     * Creates a transfer that parses on every available core.
+     */
+    public ScoreBulkTransfer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ScoreBulkTransfer(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+        this.threads = threads;
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Appends every valid record of the file to a score log. User names, if the
+     * file has them, are not stored; the log holds one history.
+     */
+    public Result importScores(Path file, DataManager target) throws DataAccessException {
+        return importFile(file, false, batch -> target.appendScores(batch.scores, batch.timestamps, batch.size));
+    }
+
+    /**
+     * Appends every valid record of the file to a partitioned store. Records
+     * without a user name are rejected.
+     */
+    public Result importScores(Path file, PartitionedScoreStore target) throws DataAccessException {
+        return importFile(file, true,
+                batch -> target.appendScores(batch.users, batch.scores, batch.timestamps, batch.size));
+    }
+
+    /**
+     * Writes the whole history of a score log to the file, oldest first.
+     */
+    public Result exportScores(DataManager source, Path file) throws DataAccessException {
+        return exportFile(file, false, writer -> {
+            try {
+                source.forEachScore((score, timestamp, userId) -> {
+                    try {
+                        writer.write(null, score, timestamp);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    /**
+     * Writes every score of a partitioned store to the file, grouped by user in the
+     * order the users were first seen, each user's scores oldest first.
+     */
+    public Result exportScores(PartitionedScoreStore source, Path file) throws DataAccessException {
+        return exportFile(file, true, writer -> {
+            try {
+                source.forEachScore((score, timestamp, userId) -> {
+                    try {
+                        writer.write(source.getUserName(userId), score, timestamp);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    private Result importFile(Path file, boolean withUsers, BatchWriter target) throws DataAccessException {
+        Format format = Format.of(file);
+        long started = System.nanoTime();
+        long lastReport = started;
+        long records = 0;
+        long rejected = 0;
+        ExecutorService parsers = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "score-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Deque<Future<Batch>> pending = new ArrayDeque<>();
+        try (InputStream in = Files.newInputStream(file)) {
+            int[] columns = null; // CSV column positions of user, score and timestamp
+            byte[] carry = new byte[0];
+            boolean first = true;
+            boolean eof = false;
+            while (!eof) {
+                byte[] chunk = new byte[Math.max(CHUNK_BYTES, carry.length * 2)];
+                System.arraycopy(carry, 0, chunk, 0, carry.length);
+                int length = carry.length;
+                int read;
+                while (length < chunk.length && (read = in.read(chunk, length, chunk.length - length)) > 0) {
+                    length += read;
+                }
+                eof = length < chunk.length;
+                int end = eof ? length : lastLineBreak(chunk, length) + 1;
+                carry = Arrays.copyOfRange(chunk, end, length);
+                if (end == 0 && !eof) continue; // A line longer than a chunk, read on
+                int start = first ? skipByteOrderMark(chunk) : 0;
+                first = false;
+                if (format == Format.CSV && columns == null) {
+                    int headerEnd = lineEnd(chunk, start, end);
+                    columns = parseHeader(new String(chunk, start, headerEnd - start, StandardCharsets.UTF_8));
+                    start = Math.min(headerEnd + 1, end);
+                }
+                final int from = start;
+                final int to = end;
+                final int[] layout = columns;
+                pending.add(parsers.submit(() -> format == Format.CSV
+                        ? parseCsv(chunk, from, to, layout, withUsers)
+                        : parseNdjson(chunk, from, to, withUsers)));
+
+                // Write finished chunks in order, keeping a bounded number in flight
+                while (!pending.isEmpty() && (pending.size() > threads * 2 || eof)) {
+                    Batch batch = await(pending.poll());
+                    if (batch.size > 0) target.write(batch);
+                    records += batch.size;
+                    rejected += batch.rejected;
+                    long now = System.nanoTime();
+                    if (listener != null && now - lastReport >= PROGRESS_INTERVAL_NANOS) {
+                        listener.progress(records, rejected, records * 1e9 / (now - started));
+                        lastReport = now;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to read " + file, e);
+        } finally {
+            parsers.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - started;
+        if (listener != null) {
+            listener.progress(records, rejected, elapsed == 0 ? 0.0 : records * 1e9 / elapsed);
+        }
+        return new Result(records, rejected, elapsed);
+    }
+
+    private static Batch await(Future<Batch> future) throws DataAccessException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new DataAccessException("Unable to parse import file", e.getCause());
+        }
+    }
+
+    private static int lastLineBreak(byte[] bytes, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (bytes[i] == '\n') return i;
+        }
+        return -1;
+    }
+
+    private static int lineEnd(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == '\n') return i;
+        }
+        return to;
+    }
+
+    private static int skipByteOrderMark(byte[] bytes) {
+        return bytes.length >= 3 && bytes[0] == (byte) 0xEF && bytes[1] == (byte) 0xBB && bytes[2] == (byte) 0xBF
+                ? 3 : 0;
+    }
+
+    /**
+     * @return the column positions of user, score and timestamp, -1 where missing
+     */
+    private static int[] parseHeader(String header) throws DataAccessException {
+        int[] columns = {-1, -1, -1};
+        List<String> names = Arrays.asList(header.trim().toLowerCase().split(",", -1));
+        for (int i = 0; i < names.size(); i++) {
+            switch (names.get(i).trim().replace("\"", "")) {
+                case "user": columns[0] = i; break;
+                case "score": columns[1] = i; break;
+                case "timestamp": columns[2] = i; break;
+                default: break;
+            }
+        }
+        if (columns[1] < 0) {
+            throw new DataAccessException("CSV header has no score column: " + header);
+        }
+        return columns;
+    }
+
+    /**
+     * Parses the CSV lines between two offsets. Numbers are read straight from the
+     * bytes; only user names become Strings.
+     */
+    private static Batch parseCsv(byte[] bytes, int from, int to, int[] columns, boolean withUsers) {
+        Batch batch = new Batch(Math.max(16, (to - from) / 16), withUsers);
+        int pos = from;
+        while (pos < to) {
+            int end = lineEnd(bytes, pos, to);
+            int lineEnd = end > pos && bytes[end - 1] == '\r' ? end - 1 : end;
+            if (lineEnd > pos) {
+                parseCsvLine(bytes, pos, lineEnd, columns, batch);
+            }
+            pos = end + 1;
+        }
+        return batch;
+    }
+
+    private static void parseCsvLine(byte[] bytes, int from, int to, int[] columns, Batch batch) {
+        String user = null;
+        long score = Long.MIN_VALUE;
+        long timestamp = 0;
+        int column = 0;
+        int pos = from;
+        while (pos <= to) {
+            int fieldStart = pos;
+            int fieldEnd;
+            boolean quoted = pos < to && bytes[pos] == '"';
+            if (quoted) {
+                pos++;
+                while (pos < to) {
+                    if (bytes[pos] == '"') {
+                        if (pos + 1 < to && bytes[pos + 1] == '"') {
+                            pos += 2; // Escaped quote
+                            continue;
+                        }
+                        break;
+                    }
+                    pos++;
+                }
+                fieldEnd = pos; // Closing quote
+                while (pos < to && bytes[pos] != ',') pos++;
+            } else {
+                while (pos < to && bytes[pos] != ',') pos++;
+                fieldEnd = pos;
+            }
+            if (column == columns[0]) {
+                user = quoted
+                        ? new String(bytes, fieldStart + 1, fieldEnd - fieldStart - 1, StandardCharsets.UTF_8)
+                                .replace("\"\"", "\"")
+                        : new String(bytes, fieldStart, fieldEnd - fieldStart, StandardCharsets.UTF_8).trim();
+            } else if (column == columns[1]) {
+                score = parseLong(bytes, fieldStart, fieldEnd);
+            } else if (column == columns[2]) {
+                timestamp = parseLong(bytes, fieldStart, fieldEnd);
+            }
+            column++;
+            pos++; // Past the comma
+        }
+        accept(batch, user, score, timestamp);
+    }
+
+    /**
+     * Parses a decimal number, allowing surrounding spaces.
+     *
+     * @return the number, or Long.MIN_VALUE if the field is not one
+     */
+    private static long parseLong(byte[] bytes, int from, int to) {
+        while (from < to && bytes[from] == ' ') from++;
+        while (to > from && bytes[to - 1] == ' ') to--;
+        if (from == to) return Long.MIN_VALUE;
+        boolean negative = bytes[from] == '-';
+        if (negative && ++from == to) return Long.MIN_VALUE;
+        if (to - from > 18) return Long.MIN_VALUE;
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) return Long.MIN_VALUE;
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    private static Batch parseNdjson(byte[] bytes, int from, int to, boolean withUsers) {
+        Batch batch = new Batch(Math.max(16, (to - from) / 48), withUsers);
+        int pos = from;
+        while (pos < to) {
+            int end = lineEnd(bytes, pos, to);
+            String line = new String(bytes, pos, end - pos, StandardCharsets.UTF_8);
+            if (!line.trim().isEmpty()) {
+                parseNdjsonLine(line, batch);
+            }
+            pos = end + 1;
+        }
+        return batch;
+    }
+
+    private static void parseNdjsonLine(String line, Batch batch) {
+        String user = null;
+        long score = Long.MIN_VALUE;
+        long timestamp = 0;
+        try (JsonReader reader = new JsonReader(new StringReader(line))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "user": user = reader.nextString(); break;
+                    case "score": score = reader.nextInt(); break;
+                    case "timestamp": timestamp = reader.nextLong(); break;
+                    default: reader.skipValue(); break;
+                }
+            }
+            reader.endObject();
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            batch.rejected++;
+            return;
+        }
+        accept(batch, user, score, timestamp);
+    }
+
+    private static void accept(Batch batch, String user, long score, long timestamp) {
+        boolean validUser = batch.users == null
+                || (user != null && !user.isEmpty() && user.indexOf('\n') < 0);
+        if (score < 0 || score > 100 || timestamp < 0 || !validUser) {
+            batch.rejected++;
+            return;
+        }
+        batch.add(user, (int) score, timestamp);
+    }
+
+    private Result exportFile(Path file, boolean withUsers, RecordSource source) throws DataAccessException {
+        Format format = Format.of(file);
+        long started = System.nanoTime();
+        long[] records = new long[1];
+        long[] lastReport = {started};
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(tempFile), StandardCharsets.UTF_8), 1 << 16)) {
+            if (format == Format.CSV) {
+                out.write(withUsers ? "user,score,timestamp\n" : "score,timestamp\n");
+            }
+            StringBuilder line = new StringBuilder(64);
+            source.forEach((user, score, timestamp) -> {
+                line.setLength(0);
+                if (format == Format.CSV) {
+                    if (withUsers) appendCsvField(line, user).append(',');
+                    line.append(score).append(',').append(timestamp).append('\n');
+                } else {
+                    line.append('{');
+                    if (withUsers) appendJsonString(line.append("\"user\":"), user).append(',');
+                    line.append("\"score\":").append(score).append(",\"timestamp\":").append(timestamp).append("}\n");
+                }
+                out.append(line);
+                long count = ++records[0];
+                if (listener != null && (count & 0xFFFF) == 0) {
+                    long now = System.nanoTime();
+                    if (now - lastReport[0] >= PROGRESS_INTERVAL_NANOS) {
+                        listener.progress(count, 0, count * 1e9 / (now - started));
+                        lastReport[0] = now;
+                    }
+                }
+            });
+        } catch (IOException e) {
+            deleteQuietly(tempFile);
+            throw new DataAccessException("Unable to write " + file, e);
+        } catch (DataAccessException e) {
+            deleteQuietly(tempFile);
+            throw e;
+        }
+        try {
+            Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new DataAccessException("Unable to write " + file, e);
+        }
+        long elapsed = System.nanoTime() - started;
+        if (listener != null) {
+            listener.progress(records[0], 0, elapsed == 0 ? 0.0 : records[0] * 1e9 / elapsed);
+        }
+        return new Result(records[0], 0, elapsed);
+    }
+
+    private static StringBuilder appendCsvField(StringBuilder sb, String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\r') < 0) {
+            return sb.append(value);
+        }
+        return sb.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    private static StringBuilder appendJsonString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"');
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Leave the partial file behind, the next export replaces it
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3 || !(args[0].equals("import") || args[0].equals("export"))) {
+            System.err.println("Usage: java ScoreBulkTransfer import|export <file.csv|file.ndjson> <score log|store directory/>");
+            System.exit(2);
+        }
+        Path file = Paths.get(args[1]);
+        boolean partitioned = new File(args[2]).isDirectory() || args[2].endsWith(File.separator);
+        ScoreBulkTransfer transfer = new ScoreBulkTransfer();
+        transfer.setProgressListener((records, rejected, rate) ->
+                System.err.printf("  %,d records, %,d rejected, %,.0f records/sec%n", records, rejected, rate));
+        Result result;
+        if (partitioned) {
+            try (PartitionedScoreStore store = new PartitionedScoreStore(args[2])) {
+                result = args[0].equals("import") ? transfer.importScores(file, store) : transfer.exportScores(store, file);
+            }
+        } else {
+            try (DataManager manager = new DataManager(args[2])) {
+                if (!manager.getRecoveryReport().isClean()) {
+                    System.err.println(manager.getRecoveryReport());
+                }
+                result = args[0].equals("import") ? transfer.importScores(file, manager) : transfer.exportScores(manager, file);
+            }
+        }
+        System.out.println(result);
+    }
+}
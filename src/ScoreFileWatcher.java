@@ -0,0 +1,152 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Notices when a score log is changed by another process, so DataManager can keep
+ * answering queries from memory until that actually happens.
+ *
+ * A background thread waits for file system events on the directory of the log
+ * (the log itself, its sealed segments and the segment index). Where the
+ * WatchService is missing or slow to report, which is common on network file
+ * systems, the thread also compares the size and modification time of the log
+ * every poll interval. Either way the callback runs on the watcher thread and
+ * should do no more than mark the cached state as stale.
+ *
+ * Appends made by the owner of the log are reported too; checking the log again
+ * after one of them finds nothing new and costs a few attribute lookups and a
+ * read of the head of the log.
+ */
+public class ScoreFileWatcher implements AutoCloseable {
+    private final File logFile;
+    private final long pollMillis;
+    private final Runnable onChange;
+    private volatile WatchService watchService; // null if the file system offers none
+    private final Thread thread;
+    private volatile boolean closed;
+    private long lastLength;
+    private long lastModified;
+
+    /**
+     * Starts watching the given log file.
+     *
+     * @param logFile    the live score log
+     * @param pollMillis how often to compare size and modification time
+     * @param onChange   called on the watcher thread whenever the log may have changed
+     */
+    public ScoreFileWatcher(File logFile, long pollMillis, Runnable onChange) {
+        if (pollMillis <= 0) {
+            throw new IllegalArgumentException("Poll interval must be positive");
+        }
+        this.logFile = logFile.getAbsoluteFile();
+        this.pollMillis = pollMillis;
+        this.onChange = onChange;
+        this.lastLength = this.logFile.length();
+        this.lastModified = this.logFile.lastModified();
+        this.watchService = register(this.logFile.getParentFile());
+
+        thread = new Thread(this::run, "score-watcher-" + logFile.getName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns whether file system events are used, or only polling.
+     */
+    public boolean isEventDriven() {
+        return watchService != null;
+    }
+
+    private static WatchService register(File dir) {
+        if (dir == null) return null;
+        WatchService service = null;
+        try {
+            service = dir.toPath().getFileSystem().newWatchService();
+            dir.toPath().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            return service;
+        } catch (IOException | UnsupportedOperationException e) {
+            closeQuietly(service);
+            return null; // Poll only
+        }
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                boolean changed;
+                WatchService service = watchService;
+                if (service != null) {
+                    WatchKey key = service.poll(pollMillis, TimeUnit.MILLISECONDS);
+                    changed = key != null && concernsLog(key);
+                    if (key != null && !key.reset()) {
+                        watchService = null; // Directory is gone, keep polling
+                        closeQuietly(service);
+                    }
+                } else {
+                    Thread.sleep(pollMillis);
+                    changed = false;
+                }
+                changed |= sizeOrTimeChanged();
+                if (changed && !closed) {
+                    onChange.run();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    private boolean concernsLog(WatchKey key) {
+        String name = logFile.getName();
+        boolean concerns = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                concerns = true; // Events were lost, assume the worst
+            } else if (isLogFile(event.context().toString(), name)) {
+                concerns = true;
+            }
+        }
+        return concerns;
+    }
+
+    /**
+     * The live log, a sealed segment or the segment index. The summary and bucket
+     * sidecars are only caches of the log and are left out.
+     */
+    private static boolean isLogFile(String fileName, String logName) {
+        if (fileName.equals(logName)) return true;
+        if (!fileName.startsWith(logName + ".")) return false;
+        String suffix = fileName.substring(logName.length() + 1);
+        return suffix.equals("segments") || (!suffix.isEmpty() && suffix.chars().allMatch(Character::isDigit));
+    }
+
+    private boolean sizeOrTimeChanged() {
+        long length = logFile.length();
+        long modified = logFile.lastModified();
+        if (length == lastLength && modified == lastModified) return false;
+        lastLength = length;
+        lastModified = modified;
+        return true;
+    }
+
+    /**
+     * Stops the watcher thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        thread.interrupt();
+        closeQuietly(watchService);
+    }
+
+    private static void closeQuietly(WatchService service) {
+        if (service == null) return;
+        try {
+            service.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+}
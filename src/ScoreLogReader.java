@@ -0,0 +1,290 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Forward-only cursor over the text score log written by DataManager
+ * (one score per line).
+ *
+ * Records are written as "score,timestamp,checksum", where the timestamp is in
+ * epoch milliseconds and the checksum is the CRC32 of the text before the last
+ * comma in 8 hex digits (see {@link #encode(int, long)}). A record whose checksum
+ * does not match is skipped. Older "score,checksum" records and plain "score"
+ * lines, from older files and from {@code saveData}, are accepted as well; their
+ * timestamp is reported as 0 (unknown).
+ *
+ * Lines are parsed straight from a reusable byte buffer, so walking the log
+ * allocates nothing per line and uses constant memory no matter how long the
+ * history is. Lines that are not a whole number are skipped, the same way
+ * DataManager has always ignored invalid entries.
+ *
+ * Only lines terminated by a line break are returned. A trailing fragment without
+ * one is a record another writer has not finished yet, so it is left for a later
+ * read; {@link #position()} never moves past it.
+ */
+public class ScoreLogReader implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private byte[] line = new byte[64];
+    private int bufferPos;
+    private int bufferLimit;
+    private long remaining;
+    private long position;
+    private int score;
+    private long timestamp;
+    private boolean checksummed;
+    private long skipped;
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Formats one score stamped with the current time as a checksummed log record,
+     * including the line break.
+     */
+    public static byte[] encode(int score) {
+        return encode(score, System.currentTimeMillis());
+    }
+
+    /**
+     * Formats one score and its timestamp as a checksummed log record,
+     * including the line break.
+     */
+    public static byte[] encode(int score, long timestamp) {
+        String fields = score + "," + timestamp;
+        byte[] payload = fields.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        String hex = Long.toHexString(crc.getValue());
+        StringBuilder sb = new StringBuilder(payload.length + 10);
+        sb.append(fields).append(',');
+        for (int i = hex.length(); i < 8; i++) {
+            sb.append('0');
+        }
+        sb.append(hex).append('\n');
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Opens the log and positions the cursor at the given byte offset.
+     */
+    public ScoreLogReader(File file, long offset) throws IOException {
+        this(file, offset, Long.MAX_VALUE);
+    }
+
+    /**
+     * Opens the log for reading the bytes between offset and limit only.
+     * Anything appended beyond limit while reading is ignored.
+     */
+    public ScoreLogReader(File file, long offset, long limit) throws IOException {
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            stream.getChannel().position(offset);
+        } catch (IOException e) {
+            stream.close();
+            throw e;
+        }
+        this.in = stream;
+        this.position = offset;
+        this.remaining = Math.max(0, limit - offset);
+    }
+
+    /**
+     * Moves to the next valid score.
+     *
+     * @return false once the end of the log has been reached
+     */
+    public boolean next() throws IOException {
+        int length;
+        while ((length = readLine()) >= 0) {
+            if (parse(length)) return true;
+            skipped++;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the current record carried a checksum (and it matched).
+     */
+    public boolean isChecksummed() {
+        return checksummed;
+    }
+
+    /**
+     * Returns how many complete lines were skipped because they were not a valid record.
+     */
+    public long getSkippedCount() {
+        return skipped;
+    }
+
+    /**
+     * Returns the score the cursor is positioned on.
+     */
+    public int score() {
+        return score;
+    }
+
+    /**
+     * Returns the time the current score was recorded, in epoch milliseconds,
+     * or 0 if the record carries no timestamp.
+     */
+    public long timestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the byte offset just after the last complete line read so far.
+     * Reading can later resume from here without skipping or repeating a record.
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * Returns the remaining scores as a stream. Closing the stream closes this reader.
+     * I/O errors while the stream is consumed are rethrown as UncheckedIOException.
+     */
+    public IntStream stream() {
+        Spliterator.OfInt spliterator = new Spliterators.AbstractIntSpliterator(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(IntConsumer action) {
+                try {
+                    if (!next()) return false;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                action.accept(score);
+                return true;
+            }
+        };
+        return StreamSupport.intStream(spliterator, false).onClose(() -> {
+            try {
+                close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Copies the next complete line (without its line break) into the line buffer.
+     *
+     * @return the length of the line, or -1 when no complete line is left
+     */
+    private int readLine() throws IOException {
+        int length = 0;
+        while (true) {
+            if (bufferPos == bufferLimit) {
+                int toRead = (int) Math.min(buffer.length, remaining);
+                bufferLimit = toRead == 0 ? -1 : in.read(buffer, 0, toRead);
+                bufferPos = 0;
+                if (bufferLimit <= 0) {
+                    bufferLimit = 0;
+                    return -1; // End of data, any bytes read belong to an unfinished line
+                }
+                remaining -= bufferLimit;
+            }
+            byte b = buffer[bufferPos++];
+            if (b == '\n') {
+                position += length + 1;
+                return length;
+            }
+            if (length == line.length) {
+                byte[] bigger = new byte[line.length * 2];
+                System.arraycopy(line, 0, bigger, 0, length);
+                line = bigger;
+            }
+            line[length++] = b;
+        }
+    }
+
+    /**
+     * Parses the line buffer as a record, verifying its checksum if it has one.
+     */
+    private boolean parse(int length) {
+        checksummed = false;
+        timestamp = 0;
+        int end = length;
+        while (end > 0 && line[end - 1] <= ' ') end--;
+        int comma = end - 1;
+        while (comma >= 0 && line[comma] != ',') comma--;
+        if (comma >= 0) {
+            long expected = parseHex(comma + 1, end);
+            if (expected < 0) return false;
+            crc.reset();
+            crc.update(line, 0, comma);
+            if (crc.getValue() != expected) return false;
+            checksummed = true;
+            end = comma;
+            int field = 0;
+            while (field < end && line[field] != ',') field++;
+            if (field < end) {
+                if (!parseTimestamp(field + 1, end)) return false;
+                end = field;
+            }
+        }
+        return parseScore(0, end);
+    }
+
+    private boolean parseTimestamp(int start, int end) {
+        if (start == end || end - start > 18) return false;
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = line[i] - '0';
+            if (digit < 0 || digit > 9) return false;
+            value = value * 10 + digit;
+        }
+        timestamp = value;
+        return true;
+    }
+
+    private long parseHex(int start, int end) {
+        if (end - start != 8) return -1;
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit(line[i], 16);
+            if (digit < 0) return -1;
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    /**
+     * Parses part of the line buffer as a whole number surrounded by optional whitespace,
+     * accepting the same input as Integer.parseInt(text.trim()) for ASCII text.
+     */
+    private boolean parseScore(int start, int end) {
+        while (start < end && line[start] <= ' ') start++;
+        while (end > start && line[end - 1] <= ' ') end--;
+        if (start == end) return false;
+
+        boolean negative = false;
+        if (line[start] == '-' || line[start] == '+') {
+            negative = line[start] == '-';
+            start++;
+            if (start == end) return false;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = line[i] - '0';
+            if (digit < 0 || digit > 9) return false;
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) return false;
+        }
+        if (negative) value = -value;
+        if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) return false;
+        score = (int) value;
+        return true;
+    }
+}
@@ -0,0 +1,170 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Startup recovery for the text score log, and the report of what it did.
+ *
+ * A crash in the middle of an append can leave a half-written record at the end of
+ * the log: a last line without its line break. Recovery cuts off that fragment and
+ * nothing else. Only the part of the log that was not yet covered by the summary
+ * sidecar is examined, so recovery time depends on how much was written since the
+ * last summary save, not on the size of the history.
+ *
+ * Complete lines that are not a valid record, e.g. because their checksum does not
+ * match, are left where they are, wherever they are in the log: readers skip them,
+ * and recovery only counts the ones it came across. Cutting the log at the first of
+ * them would throw away every valid record written after it.
+ */
+public class ScoreLogRecovery {
+    private static final int LINE_SEARCH_WINDOW = 64 * 1024;
+
+    private long recordsKept;
+    private long recordsSkipped;
+    private long recordsDropped;
+    private long bytesTruncated;
+    private boolean lineBreakAdded;
+    private long elapsedNanos;
+
+    private ScoreLogRecovery() {
+    }
+
+    /**
+     * Checks the tail of the log and truncates a torn last record, i.e. an
+     * unterminated last line.
+     *
+     * @param file          the score log
+     * @param trustedLength how many bytes at the start of the log are known to be
+     *                      complete records (the length covered by the summary), or 0
+     * @return a report of what was checked and removed
+     */
+    public static ScoreLogRecovery run(File file, long trustedLength) throws IOException {
+        long started = System.nanoTime();
+        ScoreLogRecovery report = new ScoreLogRecovery();
+        long fileLength = file.length();
+        if (fileLength == 0) {
+            report.elapsedNanos = System.nanoTime() - started;
+            return report;
+        }
+
+        long scanFrom = lineStartAtOrBefore(file, Math.min(trustedLength, fileLength));
+        boolean lastChecksummed = scanFrom > 0; // Anything we wrote ourselves has a checksum
+        long lastLineEnd;
+        try (ScoreLogReader reader = new ScoreLogReader(file, scanFrom)) {
+            while (reader.next()) {
+                lastChecksummed = reader.isChecksummed();
+            }
+            lastLineEnd = reader.position(); // End of the last complete line, valid or not
+            report.recordsSkipped = reader.getSkippedCount();
+        }
+
+        if (lastLineEnd == fileLength) {
+            report.elapsedNanos = System.nanoTime() - started;
+            return report;
+        }
+
+        if (!lastChecksummed && isPlainScore(file, lastLineEnd, fileLength)) {
+            // An older file whose last line simply lacks a line break, not a torn record
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.APPEND)) {
+                channel.write(ByteBuffer.wrap(new byte[] {'\n'}));
+            }
+            report.lineBreakAdded = true;
+        } else {
+            report.recordsDropped = 1;
+            report.bytesTruncated = fileLength - lastLineEnd;
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(lastLineEnd);
+                channel.force(true);
+            }
+        }
+        report.elapsedNanos = System.nanoTime() - started;
+        return report;
+    }
+
+    /**
+     * Finds the start of the line that contains the given offset.
+     */
+    private static long lineStartAtOrBefore(File file, long offset) throws IOException {
+        if (offset == 0) return 0;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long windowStart = Math.max(0, offset - LINE_SEARCH_WINDOW);
+            byte[] window = new byte[(int) (offset - windowStart)];
+            raf.seek(windowStart);
+            raf.readFully(window);
+            for (int i = window.length - 1; i >= 0; i--) {
+                if (window[i] == '\n') return windowStart + i + 1;
+            }
+        }
+        return 0; // No line break nearby, fall back to checking the whole log
+    }
+
+    private static boolean isPlainScore(File file, long from, long to) throws IOException {
+        if (to - from > 16) return false;
+        byte[] bytes = new byte[(int) (to - from)];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(from);
+            raf.readFully(bytes);
+        }
+        try {
+            Integer.parseInt(new String(bytes, StandardCharsets.US_ASCII).trim());
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Filled in by DataManager once the summary has been brought up to date, so the
+     * report covers the whole startup check and not only the tail scan.
+     */
+    void complete(long recordsKept, long elapsedNanos) {
+        this.recordsKept = recordsKept;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Number of valid records in the log after recovery.
+     */
+    public long getRecordsKept() {
+        return recordsKept;
+    }
+
+    /**
+     * Number of complete but invalid lines found in the part of the log recovery
+     * examined. They stay in the log; readers skip them.
+     */
+    public long getRecordsSkipped() {
+        return recordsSkipped;
+    }
+
+    /**
+     * Number of torn records cut off the end of the log: 1 if the last line was
+     * unterminated, otherwise 0.
+     */
+    public long getRecordsDropped() {
+        return recordsDropped;
+    }
+
+    public long getBytesTruncated() {
+        return bytesTruncated;
+    }
+
+    /**
+     * True if nothing had to be changed in the log.
+     */
+    public boolean isClean() {
+        return bytesTruncated == 0 && !lineBreakAdded;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Score log recovery: kept %d records, skipped %d invalid lines, dropped %d torn records (%d bytes) in %.2f ms",
+                recordsKept, recordsSkipped, recordsDropped, bytesTruncated, elapsedNanos / 1_000_000.0);
+    }
+}
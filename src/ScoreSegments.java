@@ -0,0 +1,315 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * The sealed part of a segmented score log, and the index file that describes it.
+ *
+ * DataManager always appends to the live log file. When a {@link SegmentPolicy}
+ * limit is reached, the live file is renamed to {@code <log>.000001},
+ * {@code <log>.000002} and so on, and a fresh live file is started. Each sealed
+ * segment is listed in the index file {@code <log>.segments} together with the
+ * summary of its records, so the aggregates of the whole history are known without
+ * reading any segment. The compactor later folds old segments into a single
+ * rolled-up summary and deletes their files.
+ *
+ * The index is replaced atomically. Segment files are renamed before the index
+ * lists them and deleted only after it has stopped listing them, so a crash in
+ * between leaves files the next {@link #open(String)} can reconcile: an unlisted
+ * segment newer than the index is scanned and added, an older one is deleted.
+ */
+public class ScoreSegments {
+    private static final String SEGMENT_KEY = "segment.";
+
+    private final File logFile;
+    private final File indexFile;
+    private long nextId = 1;
+    private long liveStartedAt;
+    private ScoreSummary compacted = new ScoreSummary();
+    private final TreeMap<Long, Segment> raw = new TreeMap<>();
+    private String indexStamp = ""; // the index file as last read or written, see isIndexChanged
+
+    private static class Segment {
+        final long sealedAt;
+        final ScoreSummary summary;
+
+        Segment(long sealedAt, ScoreSummary summary) {
+            this.sealedAt = sealedAt;
+            this.summary = summary;
+        }
+    }
+
+    private ScoreSegments(String logFileName) {
+        this.logFile = new File(logFileName);
+        this.indexFile = new File(logFileName + ".segments");
+        this.liveStartedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Reads the segment index of the given log, if there is one, and reconciles it
+     * with the segment files actually present.
+     */
+    public static ScoreSegments open(String logFileName) throws IOException {
+        ScoreSegments segments = new ScoreSegments(logFileName);
+        boolean changed = segments.readIndex();
+        changed |= segments.reconcile();
+        if (changed) {
+            segments.writeIndex();
+        }
+        return segments;
+    }
+
+    /**
+     * Writes the index if it does not exist yet, so the age of the live log
+     * survives a restart.
+     */
+    public synchronized void ensureIndex() throws IOException {
+        if (!indexFile.exists()) writeIndex();
+    }
+
+    public File segmentFile(long id) {
+        return new File(String.format("%s.%06d", logFile.getPath(), id));
+    }
+
+    /**
+     * Returns the files of the segments that still hold raw records, oldest first.
+     */
+    public synchronized List<File> getRawSegmentFiles() {
+        List<File> files = new ArrayList<>(raw.size());
+        for (Long id : raw.keySet()) {
+            files.add(segmentFile(id));
+        }
+        return files;
+    }
+
+    public synchronized int getRawSegmentCount() {
+        return raw.size();
+    }
+
+    /**
+     * Returns the aggregates of every sealed record, folded or not.
+     */
+    public synchronized ScoreSummary getHistory() {
+        ScoreSummary history = compacted.copy();
+        for (Segment segment : raw.values()) {
+            history.merge(segment.summary);
+        }
+        return history;
+    }
+
+    /**
+     * Returns the id the live log will get when it is sealed. It changes on every
+     * rotation, so it identifies which live log a checkpoint was taken of.
+     */
+    public synchronized long getNextId() {
+        return nextId;
+    }
+
+    /**
+     * Time the current live log was started, in epoch milliseconds.
+     */
+    public synchronized long getLiveStartedAt() {
+        return liveStartedAt;
+    }
+
+    /**
+     * Returns whether the index file on disk is no longer the one this instance last
+     * read or wrote, i.e. another process sealed or compacted the log since.
+     * Costs a file attribute lookup; open the segments again to pick up the change.
+     */
+    public synchronized boolean isIndexChanged() throws IOException {
+        return !stampOf(indexFile).equals(indexStamp);
+    }
+
+    /**
+     * File key, size and modification time of the file, or "" if it does not exist.
+     * The index is replaced by a rename, so a new index has a new file key even if
+     * its size and time happen to match.
+     */
+    private static String stampOf(File file) throws IOException {
+        if (!file.exists()) return ""; // Often the case, and cheaper than the exception
+        BasicFileAttributes attributes = LogIdentity.attributesOf(file);
+        if (attributes == null) return "";
+        return LogIdentity.keyOf(attributes) + "/" + attributes.size() + "/" + attributes.lastModifiedTime().toMillis();
+    }
+
+    /**
+     * Renames the live log to the next segment file. The segment is not part of the
+     * history until {@link #addSealed} records it in the index.
+     *
+     * @return the id of the new segment
+     */
+    public synchronized long sealLiveFile() throws IOException {
+        long id = nextId;
+        Files.move(logFile.toPath(), segmentFile(id).toPath(), StandardCopyOption.ATOMIC_MOVE);
+        return id;
+    }
+
+    /**
+     * Lists a sealed segment in the index, together with the summary of its records.
+     */
+    public synchronized void addSealed(long id, ScoreSummary summary, long sealedAt) throws IOException {
+        ScoreSummary copy = summary.copy();
+        copy.setLogLength(0);
+        raw.put(id, new Segment(sealedAt, copy));
+        nextId = Math.max(nextId, id + 1);
+        liveStartedAt = sealedAt;
+        writeIndex();
+    }
+
+    /**
+     * Folds the raw segments the policy no longer keeps into the rolled-up summary,
+     * rewrites the index and deletes their files. Only the oldest segments are ever
+     * folded, so the raw records left are always the most recent part of the history.
+     *
+     * @return the number of records whose raw form was removed
+     */
+    public synchronized long compact(SegmentPolicy policy, long now) throws IOException {
+        List<Long> folded = new ArrayList<>();
+        int newer = raw.size();
+        for (Map.Entry<Long, Segment> entry : raw.entrySet()) {
+            newer--;
+            if (!policy.shouldFold(entry.getValue().sealedAt, newer, now)) break;
+            folded.add(entry.getKey());
+        }
+        if (folded.isEmpty()) return 0;
+
+        long records = 0;
+        for (Long id : folded) {
+            ScoreSummary summary = raw.remove(id).summary;
+            compacted.merge(summary);
+            records += summary.getCount();
+        }
+        writeIndex();
+        for (Long id : folded) {
+            Files.deleteIfExists(segmentFile(id).toPath());
+        }
+        return records;
+    }
+
+    /**
+     * Forgets the whole sealed history and deletes every segment file,
+     * e.g. when the log is overwritten or deleted.
+     */
+    public synchronized void clear() throws IOException {
+        List<File> files = getRawSegmentFiles();
+        boolean hadIndex = indexFile.exists();
+        raw.clear();
+        compacted = new ScoreSummary();
+        liveStartedAt = System.currentTimeMillis();
+        if (hadIndex || !files.isEmpty()) {
+            writeIndex();
+        }
+        for (File file : files) {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    /**
+     * @return true if the index had to be repaired
+     */
+    private boolean readIndex() throws IOException {
+        indexStamp = stampOf(indexFile); // Before reading, so a change made meanwhile is seen later
+        if (indexStamp.isEmpty()) return false;
+        Properties props = new Properties();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(indexFile))) {
+            props.load(in);
+        }
+        try {
+            nextId = Long.parseLong(props.getProperty("nextId", "1"));
+            liveStartedAt = Long.parseLong(props.getProperty("liveStartedAt", Long.toString(liveStartedAt)));
+            String rollup = props.getProperty("compacted");
+            if (rollup != null) {
+                compacted = ScoreSummary.decode(rollup);
+            }
+            for (String key : props.stringPropertyNames()) {
+                if (!key.startsWith(SEGMENT_KEY) || !key.endsWith(".summary")) continue;
+                String idText = key.substring(SEGMENT_KEY.length(), key.length() - ".summary".length());
+                long id = Long.parseLong(idText);
+                long sealedAt = Long.parseLong(props.getProperty(SEGMENT_KEY + idText + ".sealedAt", "0"));
+                raw.put(id, new Segment(sealedAt, ScoreSummary.decode(props.getProperty(key))));
+            }
+        } catch (NumberFormatException e) {
+            // Corrupted index: forget what it says and rebuild it from the segment files
+            nextId = 1;
+            compacted = new ScoreSummary();
+            raw.clear();
+            System.err.println("Score segment index is corrupted, rebuilding it from the segment files");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Brings the index in line with the segment files on disk after a crash.
+     *
+     * @return true if anything changed
+     */
+    private boolean reconcile() throws IOException {
+        boolean changed = false;
+        String prefix = logFile.getName() + ".";
+        File dir = logFile.getAbsoluteFile().getParentFile();
+        File[] candidates = dir == null ? null : dir.listFiles((d, name) -> name.startsWith(prefix));
+        Set<Long> present = new HashSet<>();
+        if (candidates != null) {
+            Arrays.sort(candidates);
+            for (File file : candidates) {
+                String suffix = file.getName().substring(prefix.length());
+                if (suffix.length() < 6 || !suffix.chars().allMatch(Character::isDigit)) continue;
+                long id = Long.parseLong(suffix);
+                present.add(id);
+                if (raw.containsKey(id)) continue;
+                if (id >= nextId) {
+                    // Sealed just before a crash, before the index listed it
+                    raw.put(id, new Segment(file.lastModified(), scan(file)));
+                    nextId = id + 1;
+                } else {
+                    // Already folded, the crash came before the file was deleted
+                    Files.deleteIfExists(file.toPath());
+                }
+                changed = true;
+            }
+        }
+        for (Iterator<Map.Entry<Long, Segment>> it = raw.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, Segment> entry = it.next();
+            if (present.contains(entry.getKey())) continue;
+            // The records are gone, but their aggregates are still known
+            compacted.merge(entry.getValue().summary);
+            it.remove();
+            changed = true;
+        }
+        return changed;
+    }
+
+    private static ScoreSummary scan(File file) throws IOException {
+        ScoreSummary summary = new ScoreSummary();
+        try (ScoreLogReader reader = new ScoreLogReader(file, 0)) {
+            while (reader.next()) {
+                summary.record(reader.score());
+            }
+        }
+        return summary;
+    }
+
+    private void writeIndex() throws IOException {
+        Properties props = new Properties();
+        props.setProperty("nextId", Long.toString(nextId));
+        props.setProperty("liveStartedAt", Long.toString(liveStartedAt));
+        props.setProperty("compacted", compacted.encode());
+        for (Map.Entry<Long, Segment> entry : raw.entrySet()) {
+            String key = SEGMENT_KEY + entry.getKey();
+            props.setProperty(key + ".sealedAt", Long.toString(entry.getValue().sealedAt));
+            props.setProperty(key + ".summary", entry.getValue().summary.encode());
+        }
+        File tempFile = new File(indexFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            props.store(new BufferedOutputStream(out), "Score log segments - do not edit");
+            out.getFD().sync();
+        }
+        Files.move(tempFile.toPath(), indexFile.toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        indexStamp = stampOf(indexFile);
+    }
+}
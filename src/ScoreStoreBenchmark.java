@@ -0,0 +1,190 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Command line benchmark comparing the text based DataManager with the
+ * binary BinaryScoreLog on the same score history.
+ *
+ * Usage: java ScoreStoreBenchmark [number of scores]
+ *
+ * The history is generated once as a text file, migrated into the binary format,
+ * and both stores are then timed on startup, full reads, aggregate queries and appends.
+ * Finally the heap allocated by boxed score lists is compared with IntSeries on a
+ * history of one million scores.
+ * All files are created in a temporary directory that is removed afterwards.
+ */
+public class ScoreStoreBenchmark {
+    private static final int APPENDS = 2_000;
+    private static final int ROUNDS = 5;
+    private static final int ALLOCATION_HISTORY = 1_000_000;
+
+    private static Object sink; // Keeps measured results reachable
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        Path dir = Files.createTempDirectory("score-bench");
+        String textFile = dir.resolve("scores.txt").toString();
+        String binaryFile = dir.resolve("scores.bin").toString();
+
+        try {
+            writeTextHistory(textFile, count);
+            System.out.printf("History: %,d scores%n%n", count);
+
+            long start = System.nanoTime();
+            BinaryScoreLog.migrateFromText(textFile, binaryFile);
+            report("Migrate text -> binary", System.nanoTime() - start);
+
+            try (DataManager text = new DataManager(textFile)) {
+                report("Startup recovery, no summary", text.getRecoveryReport().getElapsedNanos());
+                try (DataManager reopened = new DataManager(textFile)) {
+                    report("Startup recovery, summary", reopened.getRecoveryReport().getElapsedNanos());
+                }
+                try (BinaryScoreLog binary = new BinaryScoreLog(binaryFile)) {
+                    System.out.println();
+                    System.out.println("getUserScores (full read)");
+                    report("  DataManager", time(() -> text.getUserScores()));
+                    report("  BinaryScoreLog", time(() -> binary.getUserScores()));
+
+                    System.out.println("getAverageScore");
+                    report("  DataManager", time(() -> text.getAverageScore()));
+                    report("  BinaryScoreLog", time(() -> binary.getAverageScore()));
+
+                    System.out.println("getLatestScore");
+                    report("  DataManager", time(() -> text.getLatestScore()));
+                    report("  BinaryScoreLog", time(() -> binary.getLatestScore()));
+
+                    System.out.printf("appendScore x %,d%n", APPENDS);
+                    report("  DataManager", time(() -> {
+                        for (int i = 0; i < APPENDS; i++) text.appendScore(i % 101);
+                    }));
+                    report("  BinaryScoreLog", time(() -> {
+                        for (int i = 0; i < APPENDS; i++) binary.appendScore(i % 101);
+                    }));
+                }
+            }
+            measureAllocations(dir);
+        } finally {
+            deleteDirectory(dir);
+        }
+    }
+
+    /**
+     * Compares the heap allocated by the old boxed List<Integer> handling of the
+     * scores with IntSeries, on a history of one million scores.
+     */
+    private static void measureAllocations(Path dir) throws Exception {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            System.out.println("\nAllocation measurement not supported by this JVM");
+            return;
+        }
+        String fileName = dir.resolve("allocation.txt").toString();
+        writeTextHistory(fileName, ALLOCATION_HISTORY);
+        System.out.printf("%nAllocated bytes, %,d scores%n", ALLOCATION_HISTORY);
+
+        List<Integer> boxed = new ArrayList<>();
+        IntSeries series = new IntSeries();
+        reportBytes("Load into List<Integer>", allocated(threads, () -> {
+            try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    boxed.add(Integer.parseInt(line.trim()));
+                }
+            }
+        }));
+        reportBytes("Load into IntSeries", allocated(threads, () -> {
+            try (ScoreLogReader reader = new ScoreLogReader(new File(fileName), 0)) {
+                while (reader.next()) {
+                    series.add(reader.score());
+                }
+            }
+        }));
+        reportBytes("Copy List<Integer>", allocated(threads, () -> new ArrayList<>(boxed)));
+        reportBytes("Snapshot IntSeries", allocated(threads, series::snapshot));
+        reportBytes("Mean of List<Integer>", allocated(threads, () -> {
+            long sum = 0;
+            for (Integer score : boxed) {
+                sum += score;
+            }
+            return (double) sum / boxed.size();
+        }));
+        reportBytes("Mean of IntSeries", allocated(threads, series::mean));
+
+        try (DataManager manager = new DataManager(fileName)) {
+            manager.getScoreSeries(); // Load the scores once, as a running application would have
+            reportBytes("DataManager.getUserScores", allocated(threads, manager::getUserScores));
+            reportBytes("DataManager.getScoreSeries().mean", allocated(threads, () -> manager.getScoreSeries().mean()));
+        }
+    }
+
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    private interface Measured {
+        Object run() throws Exception;
+    }
+
+    /**
+     * Runs the task once and returns how many bytes the current thread allocated meanwhile.
+     * The result is kept in a field so the work cannot be optimised away.
+     */
+    private static long allocated(com.sun.management.ThreadMXBean threads, Measured task) throws Exception {
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        sink = task.run();
+        return threads.getThreadAllocatedBytes(thread) - before;
+    }
+
+    private static long allocated(com.sun.management.ThreadMXBean threads, Task task) throws Exception {
+        return allocated(threads, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    private static void reportBytes(String label, long bytes) {
+        System.out.printf("%-36s %,14d bytes%n", label, bytes);
+    }
+
+    /**
+     * Runs the task a few times and returns the fastest run, in nanoseconds.
+     */
+    private static long time(Task task) throws Exception {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            task.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    private static void report(String label, long nanos) {
+        System.out.printf("%-28s %10.3f ms%n", label, nanos / 1_000_000.0);
+    }
+
+    private static void writeTextHistory(String fileName, int count) throws IOException {
+        Random random = new Random(42);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName))) {
+            for (int i = 0; i < count; i++) {
+                writer.write(Integer.toString(random.nextInt(101)));
+                writer.write('\n');
+            }
+        }
+    }
+
+    private static void deleteDirectory(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(dir);
+    }
+}
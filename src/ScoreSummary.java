@@ -0,0 +1,316 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Running aggregates (count, sum, lowest, highest and latest score, and how often
+ * each score from 0 to 100 occurred) over a score log.
+ * DataManager updates one of these on every append and keeps a copy in a small
+ * sidecar file next to the log, so the average and latest score can be answered
+ * without re-reading the whole file.
+ *
+ * The summary remembers how many bytes of the log it covers. When the log has grown
+ * past that point only the new tail has to be folded in; when it has shrunk the
+ * summary is rebuilt from the start.
+ *
+ * Summaries of consecutive parts of the history, such as sealed log segments,
+ * can be combined with {@link #merge(ScoreSummary)}.
+ *
+ * Because scores are whole numbers from 0 to 100, the histogram is an exact index
+ * of the history: median, percentiles and distributions are answered from its
+ * 101 counters, however many scores were recorded.
+ */
+public class ScoreSummary {
+    public static final int MAX_SCORE = 100;
+
+    private long count;
+    private long sum;
+    private int min;
+    private int max;
+    private int last;
+    private long logLength;
+    private String logIdentity; // which file the log length refers to, see LogIdentity
+    private long[] histogram = new long[MAX_SCORE + 1];
+
+    /**
+     * Adds one score to the running aggregates.
+     */
+    public void record(int score) {
+        if (count == 0) {
+            min = score;
+            max = score;
+        } else {
+            min = Math.min(min, score);
+            max = Math.max(max, score);
+        }
+        count++;
+        sum += score;
+        last = score;
+        if (score >= 0 && score <= MAX_SCORE) {
+            histogram[score]++;
+        }
+    }
+
+    /**
+     * Adds the aggregates of a later part of the history to these.
+     * The latest score is taken from {@code newer} if it has any scores;
+     * the covered log length is left unchanged.
+     */
+    public void merge(ScoreSummary newer) {
+        if (newer.count == 0) return;
+        if (count == 0) {
+            min = newer.min;
+            max = newer.max;
+        } else {
+            min = Math.min(min, newer.min);
+            max = Math.max(max, newer.max);
+        }
+        count += newer.count;
+        sum += newer.sum;
+        last = newer.last;
+        for (int i = 0; i <= MAX_SCORE; i++) {
+            histogram[i] += newer.histogram[i];
+        }
+    }
+
+    /**
+     * Clears all aggregates, e.g. after the log has been deleted or rewritten.
+     */
+    public void reset() {
+        count = 0;
+        sum = 0;
+        min = 0;
+        max = 0;
+        last = 0;
+        logLength = 0;
+        logIdentity = null;
+        Arrays.fill(histogram, 0);
+    }
+
+    /**
+     * Returns an independent copy of this summary.
+     */
+    public ScoreSummary copy() {
+        ScoreSummary copy = new ScoreSummary();
+        copy.count = count;
+        copy.sum = sum;
+        copy.min = min;
+        copy.max = max;
+        copy.last = last;
+        copy.logLength = logLength;
+        copy.logIdentity = logIdentity;
+        copy.histogram = histogram.clone();
+        return copy;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public int getMin() {
+        return min;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    public int getLast() {
+        return last;
+    }
+
+    /**
+     * Returns the average score, or 0.0 if nothing has been recorded.
+     */
+    public double getAverage() {
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+
+    /**
+     * Returns how many times the given score (0 to 100) was recorded.
+     */
+    public long getHistogramCount(int score) {
+        return histogram[score];
+    }
+
+    /**
+     * Returns the score at the given percentile (0 to 100) using the nearest-rank
+     * method, so the result is always a score that was actually recorded.
+     * Returns 0 if nothing has been recorded.
+     */
+    public int getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100");
+        }
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int score = 0; score <= MAX_SCORE; score++) {
+            seen += histogram[score];
+            if (seen >= rank) return score;
+        }
+        return max; // Only reached for scores outside 0 to 100, which the histogram does not hold
+    }
+
+    /**
+     * Returns the median score, or 0 if nothing has been recorded.
+     */
+    public int getMedian() {
+        return getPercentile(50);
+    }
+
+    /**
+     * Returns the percentage (0 to 100) of recorded scores that are lower than the
+     * given score, i.e. "you scored better than X% of participants".
+     * Returns 0.0 if nothing has been recorded.
+     */
+    public double getPercentileRank(int score) {
+        if (count == 0) return 0.0;
+        long below = 0;
+        for (int i = 0; i < Math.min(score, MAX_SCORE + 1); i++) {
+            below += histogram[i];
+        }
+        return 100.0 * below / count;
+    }
+
+    /**
+     * Returns how many scores fall into each bucket of the given width, starting at 0.
+     * With a width of 10 the buckets are 0-9, 10-19, ..., 90-99 and 100.
+     */
+    public long[] getDistribution(int bucketWidth) {
+        if (bucketWidth <= 0) {
+            throw new IllegalArgumentException("Bucket width must be positive");
+        }
+        long[] buckets = new long[(MAX_SCORE + bucketWidth) / bucketWidth];
+        for (int score = 0; score <= MAX_SCORE; score++) {
+            buckets[score / bucketWidth] += histogram[score];
+        }
+        return buckets;
+    }
+
+    /**
+     * Number of bytes of the score log that these aggregates cover.
+     */
+    public long getLogLength() {
+        return logLength;
+    }
+
+    public void setLogLength(long logLength) {
+        this.logLength = logLength;
+    }
+
+    /**
+     * The {@link LogIdentity#encode() identity} of the log file these aggregates
+     * cover, or null if unknown. Saved with the sidecar.
+     */
+    public String getLogIdentity() {
+        return logIdentity;
+    }
+
+    public void setLogIdentity(String logIdentity) {
+        this.logIdentity = logIdentity;
+    }
+
+    /**
+     * Formats the aggregates, without the log length, as one line of text:
+     * {@code count;sum;min;max;last;score:n,score:n,...} with only the
+     * histogram entries that are not zero.
+     */
+    public String encode() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(count).append(';').append(sum).append(';').append(min).append(';')
+                .append(max).append(';').append(last).append(';');
+        boolean first = true;
+        for (int i = 0; i <= MAX_SCORE; i++) {
+            if (histogram[i] == 0) continue;
+            if (!first) sb.append(',');
+            sb.append(i).append(':').append(histogram[i]);
+            first = false;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parses a line produced by {@link #encode()}.
+     *
+     * @throws NumberFormatException if the text is not a valid summary
+     */
+    public static ScoreSummary decode(String text) {
+        String[] parts = text.trim().split(";", -1);
+        if (parts.length != 6) {
+            throw new NumberFormatException("Malformed score summary: " + text);
+        }
+        ScoreSummary summary = new ScoreSummary();
+        summary.count = Long.parseLong(parts[0]);
+        summary.sum = Long.parseLong(parts[1]);
+        summary.min = Integer.parseInt(parts[2]);
+        summary.max = Integer.parseInt(parts[3]);
+        summary.last = Integer.parseInt(parts[4]);
+        if (!parts[5].isEmpty()) {
+            for (String entry : parts[5].split(",")) {
+                int colon = entry.indexOf(':');
+                int score = Integer.parseInt(colon < 0 ? entry : entry.substring(0, colon));
+                if (colon < 0 || score < 0 || score > MAX_SCORE) {
+                    throw new NumberFormatException("Malformed score histogram: " + text);
+                }
+                summary.histogram[score] = Long.parseLong(entry.substring(colon + 1));
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Writes the summary to the given sidecar file. The new content goes to a
+     * temporary file first and replaces the old one in a single rename, so a crash
+     * never leaves a half-written summary behind.
+     */
+    public void save(File file) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("summary", encode());
+        props.setProperty("logLength", Long.toString(logLength));
+        if (logIdentity != null) {
+            props.setProperty("logIdentity", logIdentity);
+        }
+        // A temporary file of our own, other processes sharing the log save theirs too
+        File tempFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile))) {
+                props.store(out, "Score summary - safe to delete, it is rebuilt from the score log");
+            }
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tempFile.delete(); // Only still there if the write or the rename failed
+        }
+    }
+
+    /**
+     * Reads a summary from the given sidecar file.
+     * Returns null if the file does not exist or cannot be understood, which
+     * includes sidecars written before the histogram was kept.
+     */
+    public static ScoreSummary load(File file) throws IOException {
+        if (!file.exists()) return null;
+        Properties props = new Properties();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            props.load(in);
+        }
+        String encoded = props.getProperty("summary");
+        String logLength = props.getProperty("logLength");
+        if (encoded == null || logLength == null) return null;
+        try {
+            ScoreSummary summary = decode(encoded);
+            summary.logLength = Long.parseLong(logLength);
+            summary.logIdentity = props.getProperty("logIdentity");
+            return summary;
+        } catch (NumberFormatException e) {
+            return null; // Missing or corrupted keys, treat as no summary
+        }
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ * Callback used by {@link DatabaseHandler#forEachScore(ScoreVisitor)} to walk the
+ * stored score records one at a time, oldest first, without building a list.
+ *
+ * Stores that do not record a timestamp or user id pass 0 for that field.
+ */
+@FunctionalInterface
+public interface ScoreVisitor {
+    /**
+     * Called once for every stored score record.
+     *
+     * @param score     the score (0 to 100)
+     * @param timestamp when the score was recorded, in epoch milliseconds, or 0 if unknown
+     * @param userId    the id of the user who scored it, or 0 if unknown
+     */
+    void visit(int score, long timestamp, int userId);
+}
@@ -0,0 +1,85 @@
+/**
+ * Decides when DataManager seals the live score log into a segment, and how long
+ * sealed segments are kept as raw records before the compactor folds them into
+ * the rolled-up summary. A limit of 0 means "no limit".
+ *
+ * Folding a segment deletes its records but not its aggregates: count, average,
+ * lowest, highest and the score histogram still cover the whole history.
+ */
+public class SegmentPolicy {
+    private final long maxSegmentBytes;
+    private final long maxSegmentAgeMillis;
+    private final int maxRawSegments;
+    private final long rawRetentionMillis;
+    private final long compactionIntervalMillis;
+
+    /**
+     * Creates a size based policy that keeps the given number of raw segments and
+     * runs the compactor once a minute.
+     */
+    public SegmentPolicy(long maxSegmentBytes, int maxRawSegments) {
+        this(maxSegmentBytes, 0, maxRawSegments, 0, 60_000);
+    }
+
+    /**
+     * @param maxSegmentBytes          seal the live log once it is at least this big
+     * @param maxSegmentAgeMillis      seal the live log once it is this old (and not empty)
+     * @param maxRawSegments           number of sealed segments kept as raw records
+     * @param rawRetentionMillis       fold sealed segments older than this
+     * @param compactionIntervalMillis time between runs of the background compactor
+     */
+    public SegmentPolicy(long maxSegmentBytes, long maxSegmentAgeMillis, int maxRawSegments,
+                         long rawRetentionMillis, long compactionIntervalMillis) {
+        if (maxSegmentBytes < 0 || maxSegmentAgeMillis < 0 || maxRawSegments < 0 || rawRetentionMillis < 0) {
+            throw new IllegalArgumentException("Segment limits must not be negative");
+        }
+        if (compactionIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Compaction interval must be positive");
+        }
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxSegmentAgeMillis = maxSegmentAgeMillis;
+        this.maxRawSegments = maxRawSegments;
+        this.rawRetentionMillis = rawRetentionMillis;
+        this.compactionIntervalMillis = compactionIntervalMillis;
+    }
+
+    public long getMaxSegmentBytes() {
+        return maxSegmentBytes;
+    }
+
+    public long getMaxSegmentAgeMillis() {
+        return maxSegmentAgeMillis;
+    }
+
+    public int getMaxRawSegments() {
+        return maxRawSegments;
+    }
+
+    public long getRawRetentionMillis() {
+        return rawRetentionMillis;
+    }
+
+    public long getCompactionIntervalMillis() {
+        return compactionIntervalMillis;
+    }
+
+    /**
+     * Returns true if a live log of the given size, started at the given time,
+     * should be sealed now.
+     */
+    boolean shouldSeal(long liveBytes, long liveStartedAt, long now) {
+        if (liveBytes == 0) return false;
+        if (maxSegmentBytes > 0 && liveBytes >= maxSegmentBytes) return true;
+        return maxSegmentAgeMillis > 0 && now - liveStartedAt >= maxSegmentAgeMillis;
+    }
+
+    /**
+     * Returns true if a sealed segment should be folded into the rolled-up summary.
+     *
+     * @param newerSegments number of raw segments sealed after this one
+     */
+    boolean shouldFold(long sealedAt, int newerSegments, long now) {
+        if (maxRawSegments > 0 && newerSegments >= maxRawSegments) return true;
+        return rawRetentionMillis > 0 && now - sealedAt >= rawRetentionMillis;
+    }
+}
@@ -0,0 +1,166 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Score aggregates per hour, for questions such as "average over the last 7 days".
+ *
+ * Every timestamped score is added to the {@link ScoreSummary} of the hour it was
+ * recorded in, so a rolling-window query merges at most one summary per hour in the
+ * window instead of reading the log. Hours older than the retention period are
+ * dropped as new ones are started. Scores without a timestamp (older records) are
+ * not counted in any window.
+ *
+ * DataManager saves the buckets as a checkpoint now and then rather than on every
+ * append; the checkpoint records which live log and how many bytes of it it covers,
+ * so on startup only the log written after it has to be read again.
+ */
+public class TimeBucketIndex {
+    public static final long BUCKET_MILLIS = 60L * 60 * 1000;
+    public static final long DEFAULT_RETENTION_MILLIS = 90L * 24 * BUCKET_MILLIS;
+
+    private final TreeMap<Long, ScoreSummary> buckets = new TreeMap<>();
+    private long retentionMillis;
+    private long newestBucket = Long.MIN_VALUE;
+
+    public TimeBucketIndex(long retentionMillis) {
+        setRetentionMillis(retentionMillis);
+    }
+
+    /**
+     * Adds a score recorded at the given time. Scores without a timestamp are ignored.
+     */
+    public void record(int score, long timestamp) {
+        if (timestamp <= 0) return;
+        long bucket = Math.floorDiv(timestamp, BUCKET_MILLIS) * BUCKET_MILLIS;
+        ScoreSummary summary = buckets.get(bucket);
+        if (summary == null) {
+            if (newestBucket != Long.MIN_VALUE && bucket <= newestBucket - retentionMillis) {
+                return; // Already past retention
+            }
+            summary = new ScoreSummary();
+            buckets.put(bucket, summary);
+            if (bucket > newestBucket) {
+                newestBucket = bucket;
+                buckets.headMap(bucket - retentionMillis, true).clear();
+            }
+        }
+        summary.record(score);
+    }
+
+    /**
+     * Returns the aggregates of every score recorded from {@code from} (inclusive)
+     * to {@code to} (exclusive). Both ends are rounded to whole hours: an hour is
+     * included if any part of it lies in the range.
+     */
+    public ScoreSummary summarize(long from, long to) {
+        ScoreSummary result = new ScoreSummary();
+        long first = Math.floorDiv(from, BUCKET_MILLIS) * BUCKET_MILLIS;
+        for (ScoreSummary bucket : buckets.subMap(first, true, to, false).values()) {
+            result.merge(bucket);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the aggregates of the scores recorded in the last {@code windowMillis},
+     * to the hour.
+     */
+    public ScoreSummary summarizeWindow(long windowMillis, long now) {
+        return summarize(now - windowMillis, Long.MAX_VALUE);
+    }
+
+    public void clear() {
+        buckets.clear();
+        newestBucket = Long.MIN_VALUE;
+    }
+
+    public int getBucketCount() {
+        return buckets.size();
+    }
+
+    public long getRetentionMillis() {
+        return retentionMillis;
+    }
+
+    /**
+     * Changes how long hourly buckets are kept. Shortening it drops older buckets
+     * straight away.
+     */
+    public void setRetentionMillis(long retentionMillis) {
+        if (retentionMillis < BUCKET_MILLIS) {
+            throw new IllegalArgumentException("Retention must be at least one hour");
+        }
+        this.retentionMillis = retentionMillis;
+        if (newestBucket != Long.MIN_VALUE) {
+            buckets.headMap(newestBucket - retentionMillis, true).clear();
+        }
+    }
+
+    /**
+     * Captures the buckets as properties for {@link #save(Properties, File)},
+     * together with the position in the log they cover.
+     *
+     * @param liveSegment id of the segment the live log will become when sealed
+     * @param logLength   number of bytes of the live log the buckets cover
+     */
+    public Properties checkpoint(long liveSegment, long logLength) {
+        Properties props = new Properties();
+        props.setProperty("liveSegment", Long.toString(liveSegment));
+        props.setProperty("logLength", Long.toString(logLength));
+        for (Map.Entry<Long, ScoreSummary> entry : buckets.entrySet()) {
+            props.setProperty("bucket." + entry.getKey(), entry.getValue().encode());
+        }
+        return props;
+    }
+
+    /**
+     * Writes a checkpoint to the given file, replacing the old one in a single rename.
+     */
+    public static void save(Properties checkpoint, File file) throws IOException {
+        // A temporary file of our own, other processes sharing the log save theirs too
+        File tempFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile))) {
+                checkpoint.store(out, "Hourly score buckets - safe to delete, rebuilt from the score log");
+            }
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tempFile.delete(); // Only still there if the write or the rename failed
+        }
+    }
+
+    /**
+     * Replaces the buckets with those of a checkpoint file.
+     *
+     * @return the {liveSegment, logLength} position the checkpoint covers,
+     *         or null if there is no usable checkpoint (the buckets are then empty)
+     */
+    public long[] load(File file) throws IOException {
+        clear();
+        if (!file.exists()) return null;
+        Properties props = new Properties();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            props.load(in);
+        }
+        try {
+            long liveSegment = Long.parseLong(props.getProperty("liveSegment"));
+            long logLength = Long.parseLong(props.getProperty("logLength"));
+            for (String key : props.stringPropertyNames()) {
+                if (!key.startsWith("bucket.")) continue;
+                long bucket = Long.parseLong(key.substring("bucket.".length()));
+                buckets.put(bucket, ScoreSummary.decode(props.getProperty(key)));
+                newestBucket = Math.max(newestBucket, bucket);
+            }
+            setRetentionMillis(retentionMillis);
+            return new long[] {liveSegment, logLength};
+        } catch (NumberFormatException e) {
+            clear(); // Missing or corrupted keys, treat as no checkpoint
+            return null;
+        }
+    }
+}
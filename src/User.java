@@ -10,15 +10,21 @@
  * points, retrieving total points, getting badge status, and updating the leaderboard.
  */
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
  public class User {
-    private String name;
-    private int totalPoints;
-    private Badge badge;
+    // Several quiz sessions may award points at once. The updater adds atomically
+    // without a separate AtomicInteger object per user.
+    private static final AtomicIntegerFieldUpdater<User> TOTAL_POINTS =
+            AtomicIntegerFieldUpdater.newUpdater(User.class, "totalPoints");
+
+    private final String name;
+    private volatile int totalPoints;
+    private volatile Badge badge;
 
     // Default constructor (starts at 0 points)
     public User(String name) {
         this.name = name;
-        this.totalPoints = 0;
     }
 
     // Overloaded constructor (custom starting points)
@@ -27,7 +33,7 @@
         this.totalPoints = points;
     }
     public void awardPoints(int points) {
-        this.totalPoints += points;
+        TOTAL_POINTS.addAndGet(this, points);
     }
 
     public int getTotalPoints() {
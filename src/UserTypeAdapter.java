@@ -0,0 +1,82 @@
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.function.Function;
+
+/**
+ * Reads and writes a {@link User} as a JSON object without reflection:
+ * {@code {"name": "Aina", "points": 12, "badge": "Silver"}}.
+ *
+ * The badge is stored by name only and resolved through a lookup when reading,
+ * so every user with the same badge shares one Badge instance, the way
+ * GamificationEngine assigns them. A badge the lookup does not know is dropped
+ * and the user shows "None" until the engine assigns a badge again.
+ */
+public class UserTypeAdapter extends TypeAdapter<User> {
+    private final Function<String, Badge> badgeLookup;
+
+    /**
+     * @param badgeLookup returns the badge with the given name, or null if there is none
+     */
+    public UserTypeAdapter(Function<String, Badge> badgeLookup) {
+        this.badgeLookup = badgeLookup;
+    }
+
+    @Override
+    public void write(JsonWriter out, User user) throws IOException {
+        if (user == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("name").value(user.getName());
+        out.name("points").value(user.getTotalPoints());
+        if (user.getBadge() != null) {
+            out.name("badge").value(user.getBadge().getBadgeName());
+        }
+        out.endObject();
+    }
+
+    @Override
+    public User read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String name = null;
+        int points = 0;
+        String badgeName = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "name":
+                    name = in.nextString();
+                    break;
+                case "points":
+                    points = in.nextInt();
+                    break;
+                case "badge":
+                    if (in.peek() == JsonToken.NULL) {
+                        in.nextNull();
+                    } else {
+                        badgeName = in.nextString();
+                    }
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        if (name == null) {
+            throw new IOException("User without a name at " + in.getPath());
+        }
+        User user = new User(name, points);
+        if (badgeName != null) {
+            user.setBadge(badgeLookup.apply(badgeName));
+        }
+        return user;
+    }
+}
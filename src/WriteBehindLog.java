@@ -0,0 +1,252 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Asynchronous appender used by the write-behind mode of DataManager.
+ *
+ * Callers put records into a bounded queue and return immediately (or block
+ * briefly when the queue is full). A single writer thread drains the queue in
+ * batches, writes each batch with one call on a file channel that stays open,
+ * and forces the file to disk according to the configured DurabilityPolicy.
+ *
+ * Every submitted record gets a future that completes once the record is durable
+ * under that policy, or completes exceptionally if the write failed.
+ */
+public class WriteBehindLog implements Closeable {
+    private static final int MAX_BATCH = 1024;
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private static class Entry {
+        final byte[] data;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Entry(byte[] data) {
+            this.data = data;
+        }
+    }
+
+    private final BlockingQueue<Entry> queue;
+    private final DurabilityPolicy policy;
+    private final long syncIntervalMillis;
+    private final Runnable afterBatch;
+    private final FileChannel channel;
+    private final Thread writer;
+    private final Thread shutdownHook;
+
+    private final List<CompletableFuture<Void>> awaitingSync = new ArrayList<>();
+    private long lastSync = System.currentTimeMillis();
+    private long submitted;
+    private long written;
+    private volatile boolean closed;
+    private volatile IOException failure;
+
+    /**
+     * Opens the file for appending and starts the writer thread.
+     *
+     * @param file               the file records are appended to
+     * @param capacity           maximum number of records waiting in the queue
+     * @param policy             when to force written records to disk
+     * @param syncIntervalMillis interval between forces for {@link DurabilityPolicy#INTERVAL}
+     * @param afterBatch         called on the writer thread after every written batch, may be null
+     */
+    public WriteBehindLog(File file, int capacity, DurabilityPolicy policy, long syncIntervalMillis,
+                          Runnable afterBatch) throws IOException {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.policy = policy;
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.afterBatch = afterBatch;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        writer = new Thread(this::run, "score-writer-" + file.getName());
+        writer.setDaemon(true);
+        writer.start();
+
+        // Make sure queued scores reach the file when the application exits
+        shutdownHook = new Thread(this::closeQuietly);
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Queues a record for writing. Blocks while the queue is full.
+     *
+     * @return a future that completes once the record is durable under the policy
+     * @throws IOException if the log is closed or an earlier write failed
+     */
+    public CompletableFuture<Void> submit(byte[] data) throws IOException {
+        if (closed) throw new IOException("Write-behind log is closed");
+        if (failure != null) throw new IOException("Earlier write-behind batch failed", failure);
+        Entry entry = new Entry(data);
+        synchronized (this) {
+            submitted++;
+        }
+        try {
+            queue.put(entry);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            synchronized (this) {
+                submitted--;
+                notifyAll();
+            }
+            throw new InterruptedIOException("Interrupted while queueing score");
+        }
+        return entry.done;
+    }
+
+    /**
+     * Returns true while some submitted records have not been written to the file yet.
+     */
+    public synchronized boolean hasPending() {
+        return written < submitted;
+    }
+
+    /**
+     * Returns the number of records waiting in the queue.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Waits until every record submitted so far has been written to the file
+     * (not necessarily forced to disk).
+     */
+    public synchronized void flush() throws IOException {
+        long target = submitted;
+        try {
+            while (written < target && writer.isAlive()) {
+                wait(IDLE_POLL_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while flushing scores");
+        }
+        if (failure != null) throw new IOException("Write-behind batch failed", failure);
+    }
+
+    /**
+     * Writes everything still queued, forces it to disk and stops the writer thread.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Already shutting down, the hook is the one closing us
+        }
+        channel.close();
+        if (failure != null) throw new IOException("Write-behind batch failed", failure);
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            System.err.println("Could not write queued scores: " + e.getMessage());
+        }
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            Entry first;
+            try {
+                long wait = policy == DurabilityPolicy.INTERVAL
+                        ? Math.min(IDLE_POLL_MILLIS, syncIntervalMillis) : IDLE_POLL_MILLIS;
+                first = queue.poll(wait, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                first = null; // Only woken up to re-check the closed flag
+            }
+            if (first == null) {
+                syncIfDue(false);
+                if (closed && queue.isEmpty()) break;
+                continue;
+            }
+            batch.add(first);
+            queue.drainTo(batch, MAX_BATCH - 1);
+            writeBatch(batch);
+            batch.clear();
+        }
+        syncIfDue(true);
+    }
+
+    private void writeBatch(List<Entry> batch) {
+        int size = 0;
+        for (Entry entry : batch) {
+            size += entry.data.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (Entry entry : batch) {
+            buffer.put(entry.data);
+        }
+        buffer.flip();
+
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (policy == DurabilityPolicy.PER_BATCH) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            failure = e;
+            for (Entry entry : batch) {
+                entry.done.completeExceptionally(e);
+            }
+            markWritten(batch.size());
+            return;
+        }
+
+        markWritten(batch.size());
+        if (afterBatch != null) {
+            afterBatch.run();
+        }
+        for (Entry entry : batch) {
+            if (policy == DurabilityPolicy.INTERVAL) {
+                awaitingSync.add(entry.done);
+            } else {
+                entry.done.complete(null);
+            }
+        }
+        syncIfDue(false);
+    }
+
+    private synchronized void markWritten(int count) {
+        written += count;
+        notifyAll();
+    }
+
+    /**
+     * For the interval policy, forces the file once the interval has passed and
+     * completes the futures of every record written since the last force.
+     */
+    private void syncIfDue(boolean force) {
+        if (awaitingSync.isEmpty()) return;
+        long now = System.currentTimeMillis();
+        if (!force && now - lastSync < syncIntervalMillis) return;
+        try {
+            channel.force(false);
+            for (CompletableFuture<Void> done : awaitingSync) {
+                done.complete(null);
+            }
+        } catch (IOException e) {
+            failure = e;
+            for (CompletableFuture<Void> done : awaitingSync) {
+                done.completeExceptionally(e);
+            }
+        }
+        awaitingSync.clear();
+        lastSync = now;
+    }
+}